@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.api.Manifest;
+import com.redhat.prospero.xml.ManifestXmlSupport;
+import com.redhat.prospero.xml.XmlException;
+
+/**
+ * Generates a synthetic installation (manifest.xml and modules tree) and a matching file-based repository.
+ */
+public class InstallationGenerator {
+
+   public static final String GROUP_ID = "org.prospero.bench";
+   public static final String BASE_VERSION = "1.0.0";
+
+   public static Artifact artifact(int index) {
+      return new Artifact(GROUP_ID, "artifact-" + index, BASE_VERSION, "");
+   }
+
+   public static List<Artifact> artifacts(int count) {
+      final List<Artifact> artifacts = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+         artifacts.add(artifact(i));
+      }
+      return artifacts;
+   }
+
+   public static Manifest manifest(Path manifestFile, int artifactCount) {
+      return new Manifest(artifacts(artifactCount), new ArrayList<>(), manifestFile);
+   }
+
+   /**
+    * Creates {@code base/manifest.xml} and {@code base/modules} with {@code jarsPerModule} resource roots per module.
+    */
+   public static Path installation(int artifactCount, int jarsPerModule) throws IOException, XmlException {
+      final Path base = Files.createTempDirectory("prospero-bench-installation");
+      ManifestXmlSupport.write(manifest(base.resolve("manifest.xml"), artifactCount));
+
+      final List<Artifact> artifacts = artifacts(artifactCount);
+      for (int module = 0; module * jarsPerModule < artifactCount; module++) {
+         final Path moduleDir = base.resolve("modules").resolve("org").resolve("prospero").resolve("module" + module).resolve("main");
+         Files.createDirectories(moduleDir);
+         try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(moduleDir.resolve("module.xml")))) {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<module name=\"org.prospero.module" + module + "\" xmlns=\"urn:jboss:module:1.9\">");
+            writer.println("    <resources>");
+            for (int i = module * jarsPerModule; i < Math.min(artifactCount, (module + 1) * jarsPerModule); i++) {
+               final Artifact artifact = artifacts.get(i);
+               writer.println("        <resource-root path=\"" + artifact.getFileName() + "\"/>");
+               Files.createFile(moduleDir.resolve(artifact.getFileName()));
+            }
+            writer.println("    </resources>");
+            writer.println("    <dependencies>");
+            writer.println("        <module name=\"java.se\"/>");
+            writer.println("    </dependencies>");
+            writer.println("</module>");
+         }
+      }
+      return base;
+   }
+
+   /**
+    * Creates a repository in the layout read by {@code LocalRepository} with {@code versions} versions per artifact.
+    */
+   public static Path repository(int artifactCount, int versions) throws IOException {
+      final Path base = Files.createTempDirectory("prospero-bench-repository");
+      for (Artifact artifact : artifacts(artifactCount)) {
+         final Path artifactDir = base.resolve(GROUP_ID.replace('.', '/')).resolve(artifact.getArtifactId());
+         for (int v = 0; v < versions; v++) {
+            final Artifact version = artifact.newVersion("1.0." + v + (v % 3 == 0 ? ".Final" : ""));
+            final Path versionDir = artifactDir.resolve(version.getVersion());
+            Files.createDirectories(versionDir);
+            Files.createFile(versionDir.resolve(version.getFileName()));
+         }
+      }
+      return base;
+   }
+
+   public static void delete(Path dir) throws IOException {
+      if (dir == null || !Files.exists(dir)) {
+         return;
+      }
+      try (Stream<Path> files = Files.walk(dir)) {
+         final List<Path> paths = new ArrayList<>();
+         files.forEach(paths::add);
+         Collections.sort(paths, Comparator.reverseOrder());
+         for (Path path : paths) {
+            Files.delete(path);
+         }
+      }
+   }
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.api.Manifest;
+import com.redhat.prospero.xml.ManifestXmlSupport;
+import com.redhat.prospero.xml.XmlException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestBenchmark {
+
+   @Param({"100", "1000", "5000"})
+   public int artifacts;
+
+   private Path dir;
+   private Path manifestFile;
+   private Manifest manifest;
+   private List<Artifact> lookups;
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException, XmlException {
+      dir = Files.createTempDirectory("prospero-bench-manifest");
+      manifestFile = dir.resolve("manifest.xml");
+      ManifestXmlSupport.write(InstallationGenerator.manifest(manifestFile, artifacts));
+      lookups = InstallationGenerator.artifacts(artifacts);
+   }
+
+   @Setup(Level.Iteration)
+   public void parseManifest() throws XmlException {
+      manifest = ManifestXmlSupport.parse(manifestFile.toFile());
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      InstallationGenerator.delete(dir);
+   }
+
+   @Benchmark
+   public Manifest parse() throws XmlException {
+      return ManifestXmlSupport.parse(manifestFile.toFile());
+   }
+
+   @Benchmark
+   public void write() throws XmlException {
+      ManifestXmlSupport.write(manifest, dir.resolve("written.xml").toFile());
+   }
+
+   @Benchmark
+   public Artifact find() {
+      return manifest.find(nextLookup());
+   }
+
+   @Benchmark
+   public void updateVersion() {
+      final Artifact artifact = nextLookup();
+      // alternate between two versions so the manifest keeps its size
+      final Artifact current = manifest.find(artifact);
+      manifest.updateVersion(artifact.newVersion(current.getVersion().equals("1.0.0") ? "1.0.1" : "1.0.0"));
+   }
+
+   private Artifact nextLookup() {
+      next = (next + 7919) % lookups.size();
+      return lookups.get(next);
+   }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.cli.impl.installation.Modules;
+import com.redhat.prospero.cli.xml.ModuleXmlSupport;
+import com.redhat.prospero.xml.XmlException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModulesBenchmark {
+
+   @Param({"100", "1000", "5000"})
+   public int artifacts;
+
+   @Param({"3"})
+   public int jarsPerModule;
+
+   private Path base;
+   private Modules modules;
+   private Path module;
+   private List<Artifact> lookups;
+   private int next;
+   private boolean updated;
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException, XmlException {
+      base = InstallationGenerator.installation(artifacts, jarsPerModule);
+      lookups = InstallationGenerator.artifacts(artifacts);
+      modules = new Modules(base);
+      module = modules.find(lookups.get(0)).iterator().next();
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      InstallationGenerator.delete(base);
+   }
+
+   /**
+    * Removes anything a previous invocation stored in the installation, so that every lookup starts from the
+    * module.xml files alone.
+    */
+   @State(Scope.Benchmark)
+   public static class NoStoredIndex {
+
+      @Setup(Level.Invocation)
+      public void deleteIndex(ModulesBenchmark benchmark) throws IOException {
+         Files.deleteIfExists(benchmark.base.resolve(".prospero").resolve("module-index"));
+      }
+   }
+
+   @Benchmark
+   public Collection<Path> findWarm() {
+      return modules.find(nextLookup());
+   }
+
+   @Benchmark
+   @Warmup(iterations = 1)
+   @Measurement(iterations = 3)
+   public Collection<Path> findCold(NoStoredIndex noStoredIndex) {
+      return new Modules(base).find(nextLookup());
+   }
+
+   /**
+    * Lookup in a newly opened installation, as on every prospero start. Uses whatever the previous invocations left in
+    * the installation.
+    */
+   @Benchmark
+   @Warmup(iterations = 1)
+   @Measurement(iterations = 3)
+   public Collection<Path> findReopened() {
+      return new Modules(base).find(nextLookup());
+   }
+
+   @Benchmark
+   public void updateVersionInModuleXml() throws XmlException {
+      flipVersion();
+   }
+
+   /**
+    * Update of a descriptor followed by a lookup of the new version in a newly opened installation.
+    */
+   @Benchmark
+   @Warmup(iterations = 1)
+   @Measurement(iterations = 3)
+   public Collection<Path> updateAndFind() throws XmlException {
+      return new Modules(base).find(flipVersion());
+   }
+
+   // flips the first artifact between two versions so every invocation rewrites the descriptor, returns the new version
+   private Artifact flipVersion() throws XmlException {
+      final Artifact artifact = lookups.get(0);
+      final Artifact newVersion = artifact.newVersion("1.0.1");
+      if (updated) {
+         ModuleXmlSupport.INSTANCE.updateVersionInModuleXml(module, newVersion, artifact);
+      } else {
+         ModuleXmlSupport.INSTANCE.updateVersionInModuleXml(module, artifact, newVersion);
+      }
+      updated = !updated;
+      return updated ? newVersion : artifact;
+   }
+
+   private Artifact nextLookup() {
+      next = (next + 7919) % lookups.size();
+      return lookups.get(next);
+   }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.api.Gav;
+import com.redhat.prospero.cli.impl.repository.LocalRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VersionBenchmark {
+
+   @Param({"100", "1000"})
+   public int artifacts;
+
+   @Param({"5", "50"})
+   public int versions;
+
+   private Path repositoryDir;
+   private LocalRepository repository;
+   private List<Artifact> lookups;
+   private Artifact[] versioned;
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException {
+      repositoryDir = InstallationGenerator.repository(artifacts, versions);
+      repository = new LocalRepository(repositoryDir);
+      lookups = InstallationGenerator.artifacts(artifacts);
+      versioned = new Artifact[versions];
+      for (int v = 0; v < versions; v++) {
+         versioned[v] = lookups.get(0).newVersion("1.0." + v + (v % 3 == 0 ? ".Final" : ""));
+      }
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      InstallationGenerator.delete(repositoryDir);
+   }
+
+   @Benchmark
+   public int compareVersion() {
+      next = (next + 1) % versions;
+      return versioned[next].compareVersion(versioned[versions - 1 - next]);
+   }
+
+   @Benchmark
+   public Gav findLatestVersionOf() {
+      next = (next + 7919) % lookups.size();
+      return repository.findLatestVersionOf(lookups.get(next));
+   }
+}
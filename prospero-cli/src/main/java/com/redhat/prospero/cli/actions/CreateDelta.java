@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.actions;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.redhat.prospero.impl.repository.BinaryDelta;
+
+/**
+ * Creates the binary delta between two versions of an artifact, to be deployed to a channel next to the new version.
+ */
+public class CreateDelta {
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.out.println("Not enough parameters. Need to provide old artifact, new artifact and output file.");
+         return;
+      }
+      final Path oldFile = Paths.get(args[0]);
+      final Path newFile = Paths.get(args[1]);
+      final Path deltaFile = Paths.get(args[2]);
+
+      try (OutputStream out = Files.newOutputStream(deltaFile)) {
+         BinaryDelta.diff(oldFile, newFile, out);
+      }
+      System.out.println(String.format("Delta of %d bytes written to %s (new artifact is %d bytes)", Files.size(deltaFile),
+                                       deltaFile, Files.size(newFile)));
+   }
+}
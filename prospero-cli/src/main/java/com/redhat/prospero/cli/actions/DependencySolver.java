@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.actions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.api.ArtifactDependencies;
+import com.redhat.prospero.api.ArtifactNotFoundException;
+import com.redhat.prospero.api.Gav;
+import com.redhat.prospero.api.Manifest;
+import com.redhat.prospero.api.Repository;
+import com.redhat.prospero.xml.XmlException;
+
+/**
+ * Works out the updates needed for an artifact and its transitive requirements.
+ *
+ * Requirements are processed breadth first, one dependency level at a time. All latest-version and descriptor lookups
+ * of a level are started together on the lookup pool, and their results are memoized for the whole run, so a
+ * coordinate shared by many artifacts is only looked up once. The latest version is looked up once per
+ * groupId:artifactId:classifier, regardless of the version that is required, and compared with the requirement locally.
+ * The solver owns the lookup pool and has to be closed.
+ */
+class DependencySolver implements AutoCloseable {
+
+   // lowest version, so that a lookup finds the latest version whatever the required one is
+   private static final String ANY_VERSION = "0";
+
+   private final Repository repository;
+   private final Manifest manifest;
+   private final ExecutorService lookupExecutor;
+   // latest available version by groupId:artifactId:classifier
+   private final Map<String, CompletableFuture<Gav>> latestVersions = new ConcurrentHashMap<>();
+   private final Map<Gav, CompletableFuture<ArtifactDependencies>> descriptors = new ConcurrentHashMap<>();
+
+   DependencySolver(Repository repository, Manifest manifest, int lookupThreads) {
+      this.repository = repository;
+      this.manifest = manifest;
+      this.lookupExecutor = Executors.newFixedThreadPool(Math.max(1, lookupThreads), r -> {
+         final Thread thread = new Thread(r, "prospero-update-lookup");
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   List<Update.UpdateAction> solve(Artifact artifact) throws ArtifactNotFoundException, XmlException {
+      final Gav latestVersion = join(latestVersionOf(artifact));
+      if (latestVersion.compareVersion(artifact) <= 0) {
+         return Collections.emptyList();
+      }
+
+      final List<Update.UpdateAction> updates = new ArrayList<>();
+      updates.add(new Update.UpdateAction(artifact, (Artifact) latestVersion));
+      // version selected for each updated groupId:artifactId:classifier
+      final Map<String, Gav> selected = new HashMap<>();
+      selected.put(key(artifact), latestVersion);
+
+      List<Artifact> level = dependenciesOf(join(descriptorOf(latestVersion)));
+      while (!level.isEmpty()) {
+         // merge duplicate requirements within the level, keeping the highest required version
+         final Map<String, Artifact> required = new LinkedHashMap<>();
+         for (Artifact requirement : level) {
+            required.merge(key(requirement), requirement, (a, b) -> b.compareVersion(a) > 0 ? b : a);
+         }
+
+         // start all lookups of this level before waiting on any of them
+         final Map<Artifact, Artifact> toUpdate = new LinkedHashMap<>();
+         final Map<Artifact, CompletableFuture<Gav>> lookups = new LinkedHashMap<>();
+         for (Artifact requirement : required.values()) {
+            final Gav chosen = selected.get(key(requirement));
+            if (chosen != null) {
+               if (requirement.compareVersion(chosen) > 0) {
+                  throw notAvailable(requirement);
+               }
+               continue;
+            }
+
+            // check if it is installed
+            final Artifact installed = manifest.find(requirement);
+            if (installed == null) {
+               throw new ArtifactNotFoundException(String.format("Artifact [%s:%s] not found", requirement.getGroupId(), requirement.getArtifactId()));
+            }
+            // check if it's fulfills version
+            if (requirement.compareVersion(installed) <= 0) {
+               continue;
+            }
+            toUpdate.put(requirement, installed);
+            lookups.put(requirement, latestVersionOf(requirement));
+         }
+
+         final List<CompletableFuture<ArtifactDependencies>> nextDescriptors = new ArrayList<>(lookups.size());
+         for (Map.Entry<Artifact, CompletableFuture<Gav>> lookup : lookups.entrySet()) {
+            final Artifact requirement = lookup.getKey();
+            // can we resolve the required version?
+            final Gav depLatestVersion = join(lookup.getValue());
+            if (depLatestVersion.compareVersion(requirement) < 0) {
+               throw notAvailable(requirement);
+            }
+            selected.put(key(requirement), depLatestVersion);
+            updates.add(new Update.UpdateAction(toUpdate.get(requirement), (Artifact) depLatestVersion));
+            nextDescriptors.add(descriptorOf(depLatestVersion));
+         }
+
+         level = new ArrayList<>();
+         for (CompletableFuture<ArtifactDependencies> descriptor : nextDescriptors) {
+            level.addAll(dependenciesOf(join(descriptor)));
+         }
+      }
+
+      return updates;
+   }
+
+   @Override
+   public void close() {
+      lookupExecutor.shutdownNow();
+   }
+
+   /**
+    * @return the latest version of {@code gav} if it is higher than {@code gav}'s own version, otherwise {@code gav}
+    */
+   private CompletableFuture<Gav> latestVersionOf(Gav gav) {
+      return latestVersions.computeIfAbsent(key(gav), k -> CompletableFuture.supplyAsync(() -> repository.findLatestVersionOf(gav.newVersion(ANY_VERSION)), lookupExecutor))
+         // a failed lookup is reported as null, treat it as no update
+         .thenApply(latest -> latest == null || latest.compareVersion(gav) <= 0 ? gav : gav.newVersion(latest.getVersion()));
+   }
+
+   private CompletableFuture<ArtifactDependencies> descriptorOf(Gav gav) {
+      return descriptors.computeIfAbsent(gav, g -> CompletableFuture.supplyAsync(() -> {
+         try {
+            return repository.resolveDescriptor(g);
+         } catch (XmlException e) {
+            throw new CompletionException(e);
+         }
+      }, lookupExecutor));
+   }
+
+   private static List<Artifact> dependenciesOf(ArtifactDependencies descriptor) {
+      return descriptor == null ? Collections.emptyList() : descriptor.getDependencies();
+   }
+
+   private static <T> T join(CompletableFuture<T> future) throws XmlException {
+      try {
+         return future.join();
+      } catch (CompletionException e) {
+         if (e.getCause() instanceof XmlException) {
+            throw (XmlException) e.getCause();
+         }
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   private static ArtifactNotFoundException notAvailable(Gav required) {
+      return new ArtifactNotFoundException(String.format("Unable to find [%s, %s] in version >= %s", required.getGroupId(),
+                                                         required.getArtifactId(), required.getVersion()));
+   }
+
+   static String key(Gav gav) {
+      return gav.getGroupId() + ":" + gav.getArtifactId() + ":" + (gav.getClassifier() == null ? "" : gav.getClassifier());
+   }
+}
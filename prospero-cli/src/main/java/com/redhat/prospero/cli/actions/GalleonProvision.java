@@ -18,7 +18,6 @@
 package com.redhat.prospero.cli.actions;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -26,18 +25,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import com.redhat.prospero.api.Channel;
 import com.redhat.prospero.cli.GalleonProgressCallback;
-import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
-import org.eclipse.aether.DefaultRepositorySystemSession;
+import com.redhat.prospero.impl.repository.RepositorySystemProvider;
 import org.eclipse.aether.RepositorySystem;
-import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
-import org.eclipse.aether.impl.DefaultServiceLocator;
-import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
-import org.eclipse.aether.spi.connector.transport.TransporterFactory;
-import org.eclipse.aether.transport.file.FileTransporterFactory;
-import org.eclipse.aether.transport.http.HttpTransporterFactory;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
 import org.jboss.galleon.ProvisioningException;
@@ -83,7 +75,7 @@ public class GalleonProvision {
    }
 
    public void installFeaturePack(String fpl, String path, String channelsFile) throws ProvisioningException, IOException {
-      final ProvisioningLayoutFactory layoutFactory = getLayoutFactory();
+      final ProvisioningLayoutFactory layoutFactory = getLayoutFactory(Channel.readChannels(Paths.get(channelsFile)));
       addProgressCallbacks(layoutFactory);
 
       final ProvisioningManager.Builder builder = ProvisioningManager.builder();
@@ -108,54 +100,20 @@ public class GalleonProvision {
       layoutFactory.setProgressCallback("JBMODULES", new GalleonProgressCallback<FeaturePackLocation.FPID>("Installing JBoss modules", "JBoss modules installed."));
    }
 
-   private ProvisioningLayoutFactory getLayoutFactory() throws ProvisioningException, IOException {
-      final RepositorySystem repoSystem = newRepositorySystem();
+   private ProvisioningLayoutFactory getLayoutFactory(List<Channel> channels) throws ProvisioningException, IOException {
+      final RepositorySystem repoSystem = RepositorySystemProvider.getRepositorySystem();
       List<RemoteRepository> repos = new ArrayList<>();
       // This repo is used to resolve galleon artifacts - feature packs, universe definition etc.
       // It's a local repo to allow to consume local builds of wfly
       if (localRepoUrl.isPresent()) {
-         repos.add(new RemoteRepository.Builder("galleon", "default", localRepoUrl.get()).build());
+         // use the channel's id if the repository is also a channel, so that its transport settings apply
+         final String repositoryId = RepositorySystemProvider.repositoryId(channels, localRepoUrl.get(), "galleon");
+         repos.add(new RemoteRepository.Builder(repositoryId, "default", localRepoUrl.get()).build());
       }
 //      repos.add(new RemoteRepository.Builder("repo1", "default", "https://repo1.maven.org/maven2/").build());
-      final MavenArtifactRepositoryManager maven = new MavenArtifactRepositoryManager(repoSystem, newRepositorySystemSession(repoSystem), repos);
+      final MavenArtifactRepositoryManager maven = new MavenArtifactRepositoryManager(repoSystem, RepositorySystemProvider.newSession(channels), repos);
 
       final UniverseResolver resolver = UniverseResolver.builder().addArtifactResolver(maven).build();
       return ProvisioningLayoutFactory.getInstance(resolver);
    }
-
-   private RepositorySystem newRepositorySystem()
-   {
-      /*
-       * Aether's components implement org.eclipse.aether.spi.locator.Service to ease manual wiring and using the
-       * prepopulated DefaultServiceLocator, we only need to register the repository connector and transporter
-       * factories.
-       */
-      DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
-      locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class );
-      locator.addService(TransporterFactory.class, FileTransporterFactory.class );
-      locator.addService( TransporterFactory.class, HttpTransporterFactory.class );
-
-      locator.setErrorHandler( new DefaultServiceLocator.ErrorHandler()
-      {
-         @Override
-         public void serviceCreationFailed( Class<?> type, Class<?> impl, Throwable exception )
-         {
-            System.out.println(String.format("Service creation failed for %s with implementation %s",
-                                             type, impl ));
-            exception.printStackTrace();
-         }
-      } );
-
-      return locator.getService( RepositorySystem.class );
-   }
-
-   private DefaultRepositorySystemSession newRepositorySystemSession(RepositorySystem system ) throws IOException {
-      DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
-
-      org.eclipse.aether.repository.LocalRepository localRepo = new LocalRepository(Files.createTempDirectory("mvn-repo").toString() );
-      session.setLocalRepositoryManager( system.newLocalRepositoryManager( session, localRepo ) );
-
-      return session;
-   }
-
 }
@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.actions;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.redhat.prospero.impl.repository.ChannelIndex;
+
+/**
+ * Builds the version index of a channel repository, to be published together with the repository.
+ */
+public class IndexChannel {
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 1) {
+         System.out.println("Not enough parameters. Need to provide channel repository directory.");
+         return;
+      }
+      final Path repository = Paths.get(args[0]);
+      final Path indexFile = args.length > 1 ? Paths.get(args[1]) : repository.resolve(ChannelIndex.INDEX_FILE);
+
+      final long start = System.currentTimeMillis();
+      final ChannelIndex index = ChannelIndex.scan(repository);
+      index.write(indexFile);
+      System.out.println(String.format("Indexed %d artifacts into %s in %d ms", index.size(), indexFile,
+                                       System.currentTimeMillis() - start));
+   }
+}
@@ -17,32 +17,66 @@
 
 package com.redhat.prospero.cli.actions;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.redhat.prospero.api.Artifact;
-import com.redhat.prospero.api.ArtifactDependencies;
 import com.redhat.prospero.api.ArtifactNotFoundException;
-import com.redhat.prospero.api.Gav;
-import com.redhat.prospero.api.Manifest;
+import com.redhat.prospero.cli.api.ArtifactChange;
 import com.redhat.prospero.cli.api.PackageInstallationException;
 import com.redhat.prospero.api.Repository;
 import com.redhat.prospero.cli.impl.installation.LocalInstallation;
+import com.redhat.prospero.impl.repository.LocalArtifactCache;
 import com.redhat.prospero.impl.repository.MavenRepository;
 import com.redhat.prospero.xml.ManifestXmlSupport;
 import com.redhat.prospero.xml.XmlException;
+import org.eclipse.microprofile.config.ConfigProvider;
 
-public class Update {
+public class Update implements AutoCloseable {
+
+   public static final String DISCOVERY_THREADS_PROPERTY = "prospero.update.discovery.threads";
+   public static final String DOWNLOAD_WINDOW_PROPERTY = "prospero.update.download.window";
+   public static final String DRY_RUN_PROPERTY = "prospero.update.dry-run";
+   public static final String PLAN_FILE_PROPERTY = "prospero.update.plan.file";
+   public static final String PLAN_BANDWIDTH_PROPERTY = "prospero.update.plan.bandwidth-kb";
 
    private final LocalInstallation localInstallation;
    private final Repository repository;
+   private final int discoveryThreads;
+   private final int downloadWindow;
+   private final DependencySolver solver;
+   private final UpdateJournal journal;
 
    public Update(Repository repository, LocalInstallation localInstallation) {
+      this(repository, localInstallation,
+           ConfigProvider.getConfig().getOptionalValue(DISCOVERY_THREADS_PROPERTY, Integer.class).orElse(1),
+           ConfigProvider.getConfig().getOptionalValue(DOWNLOAD_WINDOW_PROPERTY, Integer.class).orElse(4));
+   }
+
+   public Update(Repository repository, LocalInstallation localInstallation, int discoveryThreads, int downloadWindow) {
       this.localInstallation = localInstallation;
       this.repository = repository;
+      this.discoveryThreads = Math.max(1, discoveryThreads);
+      this.downloadWindow = Math.max(1, downloadWindow);
+      this.solver = new DependencySolver(repository, localInstallation.getManifest(), this.discoveryThreads);
+      this.journal = new UpdateJournal(localInstallation.getBase());
    }
 
    public static void main(String[] args) throws Exception {
@@ -60,122 +94,349 @@ public class Update {
       }
 
 //      Repository repository = new LocalRepository(Paths.get(repo));
-      LocalInstallation localInstallation = new LocalInstallation(Paths.get(base));
-      MavenRepository repository = new MavenRepository(localInstallation.getChannels());
+      if (ConfigProvider.getConfig().getOptionalValue(DRY_RUN_PROPERTY, Boolean.class).orElse(false)) {
+         // planning must not change the installation or the caches
+         final LocalInstallation localInstallation = new LocalInstallation(Paths.get(base), true);
+         final MavenRepository repository = new MavenRepository(localInstallation.getChannels(),
+                                                                LocalArtifactCache.forInstallation(localInstallation.getBase()).readOnly());
+         final UpdatePlan plan;
+         try (Update update = new Update(repository, localInstallation)) {
+            plan = update.plan();
+         }
+         final Optional<String> planFile = ConfigProvider.getConfig().getOptionalValue(PLAN_FILE_PROPERTY, String.class);
+         if (planFile.isPresent()) {
+            try (OutputStream out = Files.newOutputStream(Paths.get(planFile.get()))) {
+               plan.writeJson(out);
+            }
+         } else {
+            plan.writeJson(System.out);
+         }
+         return;
+      }
 
-      if (artifact == null) {
-         new Update(repository, localInstallation).doUpdateAll();
-      } else {
-         new Update(repository, localInstallation).doUpdate(artifact.split(":")[0], artifact.split(":")[1]);
+      LocalInstallation localInstallation = new LocalInstallation(Paths.get(base));
+      MavenRepository repository = new MavenRepository(localInstallation.getChannels(), LocalArtifactCache.forInstallation(localInstallation.getBase()));
+      try (Update update = new Update(repository, localInstallation)) {
+         if (artifact == null) {
+            update.doUpdateAll();
+         } else {
+            update.doUpdate(artifact.split(":")[0], artifact.split(":")[1]);
+         }
       }
+      localInstallation.updateSnapshot();
+      System.out.println("Version metadata cache: " + repository.getVersionMetadataCache());
+   }
+
+   /**
+    * Stops the threads used to look up updates.
+    */
+   @Override
+   public void close() {
+      solver.close();
    }
 
    public void doUpdateAll() throws ArtifactNotFoundException, XmlException, PackageInstallationException {
-      final List<UpdateAction> updates = new ArrayList<>();
-      for (Artifact artifact : localInstallation.getManifest().getArtifacts()) {
-         updates.addAll(findUpdates(artifact.getGroupId(), artifact.getArtifactId()));
+      if (resumeInterruptedUpdate()) {
+         return;
       }
+
+      final List<UpdateAction> updates = findAllUpdates();
       if (updates.isEmpty()) {
          System.out.println("No updates to execute");
          return;
       }
 
-      System.out.println("Updates found: ");
-      for (UpdateAction update : updates) {
-         System.out.print(update + "\t\t\t\t\t");
-
-         localInstallation.updateArtifact(update.oldVersion, update.newVersion, repository.resolve(update.newVersion));
-
-         System.out.println("DONE");
-      }
-
-      ManifestXmlSupport.write(localInstallation.getManifest());
+      applyUpdates(updates, false);
    }
 
    public void doUpdate(String groupId, String artifactId) throws ArtifactNotFoundException, XmlException, PackageInstallationException {
+      resumeInterruptedUpdate();
+
       final List<UpdateAction> updates = findUpdates(groupId, artifactId);
       if (updates.isEmpty()) {
          System.out.println("No updates to execute");
          return;
       }
 
+      applyUpdates(updates, false);
+   }
+
+   /**
+    * Finishes an update interrupted before its manifest was written, as recorded in the update journal.
+    *
+    * @return {@code true} if there was an update to resume
+    */
+   private boolean resumeInterruptedUpdate() throws ArtifactNotFoundException, XmlException, PackageInstallationException {
+      final List<UpdateAction> planned;
+      try {
+         planned = journal.load();
+         // the manifest is written last, so it must still list each artifact at the old version
+         for (UpdateAction update : planned) {
+            final Artifact installed = localInstallation.getManifest().find(update.oldVersion);
+            if (installed == null || !installed.getVersion().equals(update.oldVersion.getVersion())) {
+               System.out.println("Discarding update journal not matching the installation");
+               journal.complete();
+               return false;
+            }
+         }
+      } catch (IOException e) {
+         throw new PackageInstallationException("Unable to read update journal", e);
+      }
+      if (planned.isEmpty()) {
+         return false;
+      }
+
+      System.out.println("Resuming interrupted update");
+      applyUpdates(planned, true);
+      return true;
+   }
+
+   /*
+    * Downloads run on a pool with at most downloadWindow artifacts in flight, while this thread installs whatever has
+    * finished downloading, so the network and the disk are kept busy at the same time. Each step is recorded in the
+    * update journal first, so that an interrupted run can be resumed.
+    */
+   private void applyUpdates(List<UpdateAction> updates, boolean resumed) throws ArtifactNotFoundException, XmlException, PackageInstallationException {
       System.out.println("Updates found: ");
-      for (UpdateAction update : updates) {
-         System.out.print(update + "\t\t\t\t\t");
+      updates.forEach(System.out::println);
+
+      final List<UpdateAction> pending = new ArrayList<>(updates.size());
+      try {
+         if (resumed) {
+            journal.resume();
+         } else {
+            journal.start(updates);
+         }
+         for (UpdateAction update : updates) {
+            if (journal.isApplied(update) || isInstalled(update)) {
+               // already in the modules, only the manifest is missing the new version
+               localInstallation.getManifest().updateVersion(update.newVersion);
+            } else {
+               pending.add(update);
+            }
+         }
+      } catch (IOException e) {
+         throw new PackageInstallationException("Unable to write update journal", e);
+      }
+
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(downloadWindow, pending.size())));
+      final CompletionService<ArtifactChange> downloads = new ExecutorCompletionService<>(executor);
+      try {
+         int submitted = 0;
+         int installed = 0;
+         while (submitted < Math.min(downloadWindow, pending.size())) {
+            submitDownload(downloads, pending.get(submitted++));
+         }
+
+         while (installed < pending.size()) {
+            final List<ArtifactChange> completed = new ArrayList<>();
+            completed.add(downloads.take().get());
+            Future<ArtifactChange> next;
+            while ((next = downloads.poll()) != null) {
+               completed.add(next.get());
+            }
 
-         localInstallation.updateArtifact(update.oldVersion, update.newVersion, repository.resolve(update.newVersion));
+            // refill the window before installing, so the next downloads overlap with the disk work
+            for (int i = 0; i < completed.size() && submitted < pending.size(); i++) {
+               submitDownload(downloads, pending.get(submitted++));
+            }
 
-         System.out.println("DONE");
+            localInstallation.updateArtifacts(completed);
+            journal.applied(completed);
+            installed += completed.size();
+            System.out.println(String.format("Installed %d/%d", installed, pending.size()));
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new ArtifactNotFoundException("Interrupted while downloading updates", e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof ArtifactNotFoundException) {
+            throw (ArtifactNotFoundException) e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      } catch (IOException e) {
+         throw new PackageInstallationException("Unable to write update journal", e);
+      } finally {
+         executor.shutdownNow();
+         // all steps are recorded, the journal stays on disk until the manifest is written
+         journal.close();
       }
+      System.out.println("DONE");
 
       ManifestXmlSupport.write(localInstallation.getManifest());
+      try {
+         journal.complete();
+      } catch (IOException e) {
+         throw new PackageInstallationException("Unable to remove update journal", e);
+      }
    }
 
-   public List<UpdateAction> findUpdates(String groupId, String artifactId) throws ArtifactNotFoundException, XmlException {
-      List<UpdateAction> updates = new ArrayList<>();
+   // module.xml files are replaced atomically, so a run interrupted after installing an artifact left no old references
+   private boolean isInstalled(UpdateAction update) {
+      return localInstallation.findModules(update.oldVersion).isEmpty() && !localInstallation.findModules(update.newVersion).isEmpty();
+   }
 
-      Set<Gav> unresolved = new HashSet<>();
+   private void submitDownload(CompletionService<ArtifactChange> downloads, UpdateAction update) {
+      downloads.submit(() -> {
+         File artifactFile = journal.getDownloaded(update);
+         if (artifactFile == null) {
+            artifactFile = repository.resolveUpdate(update.oldVersion, installedFile(update.oldVersion), update.newVersion);
+            journal.downloaded(update, artifactFile);
+         }
+         return new ArtifactChange(update.oldVersion, update.newVersion, artifactFile);
+      });
+   }
 
-      final Manifest manifest = localInstallation.getManifest();
+   private File installedFile(Artifact artifact) {
+      for (Path module : localInstallation.findModules(artifact)) {
+         final Path file = module.getParent().resolve(artifact.getFileName());
+         if (Files.exists(file)) {
+            return file.toFile();
+         }
+      }
+      return null;
+   }
 
-      final Artifact artifact = manifest.find(new Artifact(groupId, artifactId, "", ""));
+   public List<UpdateAction> findAllUpdates() throws ArtifactNotFoundException, XmlException {
+      final long start = System.currentTimeMillis();
+      final List<UpdateAction> updates = discoverUpdates();
+      System.out.println(String.format("Checked %d artifacts for updates in %d ms using %d thread(s)",
+                                       localInstallation.getManifest().getArtifacts().size(),
+                                       System.currentTimeMillis() - start, discoveryThreads));
+      return updates;
+   }
 
-      if (artifact == null) {
-         throw new ArtifactNotFoundException(String.format("Artifact [%s:%s] not found", groupId, artifactId));
+   private List<UpdateAction> discoverUpdates() throws ArtifactNotFoundException, XmlException {
+      final List<Artifact> artifacts = localInstallation.getManifest().getArtifacts();
+      final List<UpdateAction> updates;
+      if (discoveryThreads == 1) {
+         updates = new ArrayList<>();
+         for (Artifact artifact : artifacts) {
+            updates.addAll(findUpdates(artifact.getGroupId(), artifact.getArtifactId()));
+         }
+      } else {
+         updates = findUpdatesConcurrently(artifacts);
       }
+      return deduplicate(updates);
+   }
 
-      final Gav latestVersion = repository.findLatestVersionOf(artifact);
+   /**
+    * Works out what {@link #doUpdateAll()} would do, without downloading artifacts or changing the installation.
+    * Artifact sizes come from the local cache or from the channels' response headers.
+    *
+    * The estimated time assumes {@code prospero.update.plan.bandwidth-kb} KiB/s (10 MiB/s by default) and one request
+    * round trip - as measured by the size lookups - per batch of {@code prospero.update.download.window} downloads.
+    *
+    * To leave the module index and the caches untouched as well, use a read-only {@link LocalInstallation} and a
+    * repository over a {@link LocalArtifactCache#readOnly()} cache, as the dry-run command does.
+    */
+   public UpdatePlan plan() throws ArtifactNotFoundException, XmlException {
+      final long start = System.currentTimeMillis();
+      final List<UpdateAction> updates = discoverUpdates();
+
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.min(downloadWindow, Math.max(1, updates.size())));
+      final List<UpdatePlan.ArtifactUpdate> artifacts = new ArrayList<>(updates.size());
+      long remoteLookups = 0;
+      long remoteLookupMillis = 0;
+      try {
+         final List<Future<long[]>> sizes = new ArrayList<>(updates.size());
+         for (UpdateAction update : updates) {
+            sizes.add(executor.submit(() -> {
+               final long lookupStart = System.currentTimeMillis();
+               final long size = repository.getDownloadSize(update.newVersion);
+               return new long[]{size, System.currentTimeMillis() - lookupStart};
+            }));
+         }
+         for (int i = 0; i < updates.size(); i++) {
+            final Artifact oldVersion = updates.get(i).oldVersion;
+            final long[] size = sizes.get(i).get();
+            if (size[0] != 0) {
+               remoteLookups++;
+               remoteLookupMillis += size[1];
+            }
+            artifacts.add(new UpdatePlan.ArtifactUpdate(oldVersion.getGroupId(), oldVersion.getArtifactId(), oldVersion.getClassifier(),
+                                                        oldVersion.getVersion(), updates.get(i).newVersion.getVersion(), size[0]));
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new ArtifactNotFoundException("Interrupted while planning updates", e);
+      } catch (ExecutionException e) {
+         throw new RuntimeException(e.getCause());
+      } finally {
+         executor.shutdownNow();
+      }
 
-      if (latestVersion.compareVersion(artifact) <= 0) {
-         return updates;
+      final Set<String> moduleFiles = new TreeSet<>();
+      for (UpdateAction update : updates) {
+         for (Path module : localInstallation.findModules(update.oldVersion)) {
+            moduleFiles.add(localInstallation.getBase().relativize(module).toString());
+         }
       }
 
-      updates.add(new UpdateAction(artifact, (Artifact) latestVersion));
+      final long bandwidth = ConfigProvider.getConfig().getOptionalValue(PLAN_BANDWIDTH_PROPERTY, Long.class).orElse(10240L) * 1024;
+      final long downloadBytes = artifacts.stream().mapToLong(UpdatePlan.ArtifactUpdate::getDownloadBytes).filter(b -> b > 0).sum();
+      final long roundTrip = remoteLookups == 0 ? 0 : remoteLookupMillis / remoteLookups;
+      final long batches = (remoteLookups + downloadWindow - 1) / downloadWindow;
+      final long estimatedMillis = downloadBytes * 1000 / Math.max(1, bandwidth) + batches * roundTrip;
 
-      final ArtifactDependencies artifactDependencies = repository.resolveDescriptor(latestVersion);
-      if (artifactDependencies == null) {
-         return updates;
-      }
+      return new UpdatePlan(artifacts, new ArrayList<>(moduleFiles), (estimatedMillis + 999) / 1000,
+                            System.currentTimeMillis() - start);
+   }
 
-      for (Artifact required : artifactDependencies.getDependencies()) {
-         unresolved.add(required);
+   // an artifact required by several others is only updated once
+   private static List<UpdateAction> deduplicate(List<UpdateAction> updates) {
+      final Map<String, UpdateAction> unique = new LinkedHashMap<>();
+      for (UpdateAction update : updates) {
+         unique.putIfAbsent(DependencySolver.key(update.getOldVersion()), update);
       }
+      return new ArrayList<>(unique.values());
+   }
 
-      for (Gav required : unresolved) {
-         // check if it is installed
-         final Artifact dep = manifest.find(required);
-         //   if not - throw ANFE
-         if (dep == null) {
-            throw new ArtifactNotFoundException(String.format("Artifact [%s:%s] not found", required.getGroupId(), required.getGroupId()));
+   private List<UpdateAction> findUpdatesConcurrently(List<Artifact> artifacts) throws ArtifactNotFoundException, XmlException {
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.min(discoveryThreads, Math.max(1, artifacts.size())));
+      try {
+         final List<Future<List<UpdateAction>>> results = new ArrayList<>(artifacts.size());
+         for (Artifact artifact : artifacts) {
+            results.add(executor.submit(() -> findUpdates(artifact.getGroupId(), artifact.getArtifactId())));
+         }
 
+         // merge in manifest order so the result matches the serial discovery
+         final List<UpdateAction> updates = new ArrayList<>();
+         for (Future<List<UpdateAction>> result : results) {
+            updates.addAll(result.get());
          }
-         // check if it's fulfills version
-         if (required.compareVersion(dep) <= 0) {
-            continue;
-         } else {
-            // can we resolve the required version?
-            final Gav depLatestVersion = repository.findLatestVersionOf(required);
-            if (depLatestVersion.compareVersion(required) < 0) {
-               throw new ArtifactNotFoundException(String.format("Unable to find [%s, %s] in version >= %s", required.getGroupId(),
-                                                                 required.getArtifactId(), required.getVersion()));
-            }
-            // add to updates
-            updates.add(new UpdateAction(dep, (Artifact)depLatestVersion));
-            // process dependencies
-
-            final ArtifactDependencies depDependencies = repository.resolveDescriptor(latestVersion);
-            if (artifactDependencies != null) {
-               for (Artifact depReq : depDependencies.getDependencies()) {
-                  unresolved.add(depReq);
-               }
-            }
+         return updates;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new ArtifactNotFoundException("Interrupted while looking for updates", e);
+      } catch (ExecutionException e) {
+         final Throwable cause = e.getCause();
+         if (cause instanceof ArtifactNotFoundException) {
+            throw (ArtifactNotFoundException) cause;
+         }
+         if (cause instanceof XmlException) {
+            throw (XmlException) cause;
+         }
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
          }
+         throw new RuntimeException(cause);
+      } finally {
+         executor.shutdownNow();
       }
+   }
 
-      return updates;
+   public List<UpdateAction> findUpdates(String groupId, String artifactId) throws ArtifactNotFoundException, XmlException {
+      final Artifact artifact = localInstallation.getManifest().find(new Artifact(groupId, artifactId, "", ""));
+
+      if (artifact == null) {
+         throw new ArtifactNotFoundException(String.format("Artifact [%s:%s] not found", groupId, artifactId));
+      }
+
+      return solver.solve(artifact);
    }
 
-   class UpdateAction {
+   static class UpdateAction {
       private Artifact oldVersion;
       private Artifact newVersion;
 
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.cli.api.ArtifactChange;
+
+/**
+ * Write-ahead log of an update, stored in {@code .prospero/update.journal} of the installation.
+ *
+ * The planned updates are recorded before anything is downloaded, followed by each finished download and each batch
+ * of artifacts installed into the modules. Every record is forced to disk before the update moves on. The journal is
+ * removed once the manifest has been written, so a journal found on start means the previous update was interrupted
+ * and can be resumed without discovering updates or downloading artifacts again.
+ */
+class UpdateJournal {
+
+   private static final String HEADER = "# prospero update journal v1";
+   private static final String PLANNED = "PLANNED";
+   private static final String DOWNLOADED = "DOWNLOADED";
+   private static final String APPLIED = "APPLIED";
+
+   private final Path file;
+   private final Map<String, File> downloaded = new ConcurrentHashMap<>();
+   private final Set<String> applied = ConcurrentHashMap.newKeySet();
+   private FileChannel channel;
+
+   UpdateJournal(Path base) {
+      this.file = base.resolve(".prospero").resolve("update.journal");
+   }
+
+   /**
+    * Reads the journal left by an interrupted update.
+    *
+    * @return the updates planned by the interrupted run, empty if there is nothing to resume
+    */
+   List<Update.UpdateAction> load() throws IOException {
+      downloaded.clear();
+      applied.clear();
+      if (!Files.exists(file)) {
+         return Collections.emptyList();
+      }
+
+      final String[] lines = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n", -1);
+      if (!HEADER.equals(lines[0]) || lines.length == 1) {
+         return Collections.emptyList();
+      }
+      final List<Update.UpdateAction> planned = new ArrayList<>();
+      // the last segment follows the last line break - empty, or a record cut short by a crash whose step will simply
+      // be repeated
+      for (int i = 1; i < lines.length - 1; i++) {
+         final String[] fields = lines[i].split("\t", -1);
+         if (PLANNED.equals(fields[0]) && fields.length == 7) {
+            planned.add(new Update.UpdateAction(new Artifact(fields[1], fields[2], fields[5], fields[3], fields[4]),
+                                                new Artifact(fields[1], fields[2], fields[6], fields[3], fields[4])));
+         } else if (DOWNLOADED.equals(fields[0]) && fields.length == 3) {
+            downloaded.put(fields[1], new File(fields[2]));
+         } else if (APPLIED.equals(fields[0]) && fields.length == 2) {
+            applied.add(fields[1]);
+         }
+      }
+      return planned;
+   }
+
+   /**
+    * Starts a new journal with the planned updates, replacing any previous one.
+    */
+   synchronized void start(List<Update.UpdateAction> updates) throws IOException {
+      downloaded.clear();
+      applied.clear();
+      Files.createDirectories(file.getParent());
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      final StringBuilder records = new StringBuilder(HEADER).append('\n');
+      for (Update.UpdateAction update : updates) {
+         final Artifact oldVersion = update.getOldVersion();
+         records.append(String.join("\t", PLANNED, oldVersion.getGroupId(), oldVersion.getArtifactId(),
+                                    nullToEmpty(oldVersion.getClassifier()), oldVersion.getPackaging(), oldVersion.getVersion(),
+                                    update.getNewVersion().getVersion())).append('\n');
+      }
+      append(records.toString());
+   }
+
+   /**
+    * Continues writing the journal loaded by {@link #load()}. A record torn by the interruption - the part after the
+    * last line break - is cut off first, so that new records start on a line of their own.
+    */
+   synchronized void resume() throws IOException {
+      channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      final long end = completeRecordsEnd();
+      if (end < channel.size()) {
+         channel.truncate(end);
+         channel.force(false);
+      }
+      channel.position(end);
+   }
+
+   // position right after the last line break of the journal
+   private long completeRecordsEnd() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(4096);
+      long blockEnd = channel.size();
+      while (blockEnd > 0) {
+         final long blockStart = Math.max(0, blockEnd - buffer.capacity());
+         buffer.clear();
+         buffer.limit((int) (blockEnd - blockStart));
+         while (buffer.hasRemaining()) {
+            if (channel.read(buffer, blockStart + buffer.position()) < 0) {
+               break;
+            }
+         }
+         for (int i = buffer.position() - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+               return blockStart + i + 1;
+            }
+         }
+         blockEnd = blockStart;
+      }
+      return 0;
+   }
+
+   /**
+    * @return the file downloaded for the update by the interrupted run, or {@code null} if it has to be downloaded again
+    */
+   File getDownloaded(Update.UpdateAction update) {
+      final File file = downloaded.get(DependencySolver.key(update.getOldVersion()));
+      return file != null && file.isFile() ? file : null;
+   }
+
+   boolean isApplied(Update.UpdateAction update) {
+      return applied.contains(DependencySolver.key(update.getOldVersion()));
+   }
+
+   synchronized void downloaded(Update.UpdateAction update, File artifactFile) throws IOException {
+      final String key = DependencySolver.key(update.getOldVersion());
+      downloaded.put(key, artifactFile);
+      append(DOWNLOADED + "\t" + key + "\t" + artifactFile.getAbsolutePath() + "\n");
+   }
+
+   synchronized void applied(List<ArtifactChange> changes) throws IOException {
+      final StringBuilder records = new StringBuilder();
+      for (ArtifactChange change : changes) {
+         final String key = DependencySolver.key(change.getOldVersion());
+         applied.add(key);
+         records.append(APPLIED).append('\t').append(key).append('\n');
+      }
+      append(records.toString());
+   }
+
+   /**
+    * Removes the journal after the update has been fully recorded in the manifest.
+    */
+   synchronized void complete() throws IOException {
+      close();
+      Files.deleteIfExists(file);
+   }
+
+   synchronized void close() {
+      if (channel != null) {
+         try {
+            channel.close();
+         } catch (IOException e) {
+            // every record was already forced to disk
+         }
+         channel = null;
+      }
+   }
+
+   private void append(String records) throws IOException {
+      final ByteBuffer bytes = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+      while (bytes.hasRemaining()) {
+         channel.write(bytes);
+      }
+      channel.force(false);
+   }
+
+   private static String nullToEmpty(String value) {
+      return value == null ? "" : value;
+   }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.actions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Result of planning an update without applying it: the artifacts that would change, what has to be downloaded, the
+ * module.xml files that would be rewritten and a rough duration, for scheduling maintenance windows.
+ */
+@JsonPropertyOrder({"artifacts", "downloadBytes", "unknownSizes", "moduleFiles", "estimatedSeconds", "planningMillis"})
+public class UpdatePlan {
+
+   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+      .enable(SerializationFeature.INDENT_OUTPUT)
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+   private final List<ArtifactUpdate> artifacts;
+   private final List<String> moduleFiles;
+   private final long estimatedSeconds;
+   private final long planningMillis;
+
+   public UpdatePlan(List<ArtifactUpdate> artifacts, List<String> moduleFiles, long estimatedSeconds, long planningMillis) {
+      this.artifacts = artifacts;
+      this.moduleFiles = moduleFiles;
+      this.estimatedSeconds = estimatedSeconds;
+      this.planningMillis = planningMillis;
+   }
+
+   public List<ArtifactUpdate> getArtifacts() {
+      return artifacts;
+   }
+
+   // total of known sizes, artifacts already in the local cache count as 0
+   public long getDownloadBytes() {
+      return artifacts.stream().mapToLong(ArtifactUpdate::getDownloadBytes).filter(s -> s > 0).sum();
+   }
+
+   public long getUnknownSizes() {
+      return artifacts.stream().filter(a -> a.getDownloadBytes() < 0).count();
+   }
+
+   public List<String> getModuleFiles() {
+      return moduleFiles;
+   }
+
+   public long getEstimatedSeconds() {
+      return estimatedSeconds;
+   }
+
+   public long getPlanningMillis() {
+      return planningMillis;
+   }
+
+   public void writeJson(OutputStream out) throws IOException {
+      OBJECT_MAPPER.writeValue(out, this);
+      out.write('\n');
+      out.flush();
+   }
+
+   @JsonPropertyOrder({"groupId", "artifactId", "classifier", "currentVersion", "newVersion", "downloadBytes"})
+   public static class ArtifactUpdate {
+      private final String groupId;
+      private final String artifactId;
+      private final String classifier;
+      private final String currentVersion;
+      private final String newVersion;
+      private final long downloadBytes;
+
+      public ArtifactUpdate(String groupId, String artifactId, String classifier, String currentVersion, String newVersion, long downloadBytes) {
+         this.groupId = groupId;
+         this.artifactId = artifactId;
+         this.classifier = classifier;
+         this.currentVersion = currentVersion;
+         this.newVersion = newVersion;
+         this.downloadBytes = downloadBytes;
+      }
+
+      public String getGroupId() {
+         return groupId;
+      }
+
+      public String getArtifactId() {
+         return artifactId;
+      }
+
+      public String getClassifier() {
+         return classifier;
+      }
+
+      public String getCurrentVersion() {
+         return currentVersion;
+      }
+
+      public String getNewVersion() {
+         return newVersion;
+      }
+
+      // -1 if the channel didn't report the size
+      public long getDownloadBytes() {
+         return downloadBytes;
+      }
+   }
+}
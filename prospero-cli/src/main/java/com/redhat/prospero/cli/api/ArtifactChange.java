@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.api;
+
+import java.io.File;
+
+import com.redhat.prospero.api.Artifact;
+
+public class ArtifactChange {
+
+   private final Artifact oldVersion;
+   private final Artifact newVersion;
+   private final File artifactFile;
+
+   public ArtifactChange(Artifact oldVersion, Artifact newVersion, File artifactFile) {
+      this.oldVersion = oldVersion;
+      this.newVersion = newVersion;
+      this.artifactFile = artifactFile;
+   }
+
+   public Artifact getOldVersion() {
+      return oldVersion;
+   }
+
+   public Artifact getNewVersion() {
+      return newVersion;
+   }
+
+   public File getArtifactFile() {
+      return artifactFile;
+   }
+}
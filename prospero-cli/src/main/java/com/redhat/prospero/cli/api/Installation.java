@@ -17,6 +17,8 @@ public interface Installation {
                        Artifact newArtifact,
                        File artifactFile) throws PackageInstallationException;
 
+   void updateArtifacts(List<ArtifactChange> changes) throws PackageInstallationException;
+
    Manifest getManifest();
 
    List<Channel> getChannels();
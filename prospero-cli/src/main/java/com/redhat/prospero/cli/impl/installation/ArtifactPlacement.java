@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.impl.installation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+/**
+ * Places downloaded artifacts into module directories.
+ *
+ * With the {@code link} strategy (the default) the module jar is a hard link to the file in the local artifact cache.
+ * The opt-in {@code store} strategy first copies artifacts into the installation's {@link ContentStore} and module
+ * jars are hard links to the stored objects, so identical jars of different modules share one copy and content that
+ * is already installed isn't written again. If linking is not possible (e.g. the cache is on another filesystem) the file is copied
+ * using {@link FileChannel#transferTo}, letting the OS move the bytes without going through the heap.
+ *
+ * A linked module jar and its source are the same inode, so writing to one would change the other. Placed files are
+ * therefore never written in place: a copy goes to a temporary file that is renamed over the target, and a link
+ * replaces the target's directory entry. The local artifact cache likewise records use on a marker file instead of
+ * changing the modification time of cached artifacts.
+ */
+public class ArtifactPlacement {
+
+   public static final String STRATEGY_PROPERTY = "prospero.install.placement";
+
+   public enum Strategy {
+      STORE, LINK, COPY
+   }
+
+   private final Strategy strategy;
+   private final ContentStore store;
+
+   public ArtifactPlacement(Strategy strategy) {
+      this(strategy, null);
+   }
+
+   ArtifactPlacement(Strategy strategy, ContentStore store) {
+      if (strategy == Strategy.STORE && store == null) {
+         throw new IllegalArgumentException("The store strategy requires a content store");
+      }
+      this.strategy = strategy;
+      this.store = store;
+   }
+
+   public static ArtifactPlacement fromConfig(Path installation) {
+      return fromConfig(ConfigProvider.getConfig(), installation);
+   }
+
+   static ArtifactPlacement fromConfig(Config config, Path installation) {
+      final String value = config.getOptionalValue(STRATEGY_PROPERTY, String.class).orElse("link");
+      return new ArtifactPlacement(Strategy.valueOf(value.toUpperCase()), ContentStore.forInstallation(installation));
+   }
+
+   public Strategy getStrategy() {
+      return strategy;
+   }
+
+   public void place(File source, Path target) throws IOException {
+      Path content = source.toPath();
+      if (strategy == Strategy.STORE) {
+         content = store.store(content);
+         if (Files.exists(target) && Files.isSameFile(content, target)) {
+            return;
+         }
+      }
+      if (strategy != Strategy.COPY && link(content, target)) {
+         return;
+      }
+      copy(content, target);
+   }
+
+   /**
+    * Replaces jars under {@code dir} with links to the content store, so that duplicates share one copy.
+    * Does nothing unless the {@code store} strategy is used.
+    */
+   public void deduplicate(Path dir) throws IOException {
+      if (strategy != Strategy.STORE || !Files.isDirectory(dir)) {
+         return;
+      }
+      final List<Path> jars;
+      try (Stream<Path> files = Files.walk(dir)) {
+         jars = files.filter(p -> p.getFileName().toString().endsWith(".jar") && Files.isRegularFile(p)).collect(Collectors.toList());
+      }
+      for (Path jar : jars) {
+         place(jar.toFile(), jar);
+      }
+   }
+
+   /**
+    * Removes content store objects that are no longer used by any module. Does nothing unless the {@code store}
+    * strategy is used.
+    */
+   public void sweep() throws IOException {
+      if (strategy == Strategy.STORE) {
+         store.sweep();
+      }
+   }
+
+   private boolean link(Path source, Path target) {
+      try {
+         Files.deleteIfExists(target);
+         createLink(target, source);
+         return true;
+      } catch (IOException | UnsupportedOperationException | SecurityException e) {
+         // different filesystems or no hard link support - fall back to copy
+         return false;
+      }
+   }
+
+   // separate so that tests can simulate a filesystem without hard links
+   void createLink(Path link, Path existing) throws IOException {
+      Files.createLink(link, existing);
+   }
+
+   private static void copy(Path source, Path target) throws IOException {
+      // not Files.createTempFile - the copy should get the default permissions of a new file, not 0600
+      final Path tmp = target.resolveSibling(target.getFileName() + ".tmp" + Thread.currentThread().getId());
+      try {
+         try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+              FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+               position += in.transferTo(position, size - position, out);
+            }
+         }
+         Files.setLastModifiedTime(tmp, Files.getLastModifiedTime(source));
+         // the target may be a link to a cached artifact - replace it instead of truncating the shared inode
+         Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+         Files.deleteIfExists(tmp);
+      }
+   }
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.impl.installation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of artifact files inside an installation, in {@code .prospero/content/<xx>/<sha-256>}.
+ *
+ * Module directories hard link to the stored objects, so a jar used by several modules or layers exists only once on
+ * disk, and placing content that is already stored doesn't write anything. Objects are always copied into the store,
+ * never linked to the source, so they don't share an inode with the local artifact cache.
+ *
+ * An object no longer used by any module has a link count of one - the store's own entry - and is removed by
+ * {@link #sweep()}.
+ */
+class ContentStore {
+
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private final Path root;
+   // digests of files already hashed in this run, keyed by path, size and modification time
+   private final Map<String, String> digests = new ConcurrentHashMap<>();
+
+   ContentStore(Path root) {
+      this.root = root;
+   }
+
+   static ContentStore forInstallation(Path base) {
+      return new ContentStore(base.resolve(".prospero").resolve("content"));
+   }
+
+   /**
+    * Adds the content of {@code source} to the store unless it is already there.
+    *
+    * @return the stored object with the same content as {@code source}
+    */
+   Path store(Path source) throws IOException {
+      final String digest = digest(source);
+      final Path object = root.resolve(digest.substring(0, 2)).resolve(digest);
+      if (Files.exists(object)) {
+         return object;
+      }
+
+      Files.createDirectories(object.getParent());
+      final Path tmp = object.resolveSibling(digest + ".tmp" + Thread.currentThread().getId());
+      try {
+         Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+         Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+         // stored concurrently with the same content
+      } finally {
+         Files.deleteIfExists(tmp);
+      }
+      return object;
+   }
+
+   /**
+    * Removes stored objects that are not linked from anywhere in the installation. Does nothing on file systems that
+    * don't report link counts.
+    *
+    * @return number of removed objects
+    */
+   int sweep() throws IOException {
+      if (!Files.isDirectory(root) || !root.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+         return 0;
+      }
+      final List<Path> objects;
+      try (Stream<Path> files = Files.walk(root)) {
+         // temporary files belong to a store in progress
+         objects = files.filter(p -> Files.isRegularFile(p) && !p.getFileName().toString().contains(".tmp")).collect(Collectors.toList());
+      }
+      int removed = 0;
+      for (Path object : objects) {
+         if (((Number) Files.getAttribute(object, "unix:nlink")).intValue() == 1) {
+            Files.deleteIfExists(object);
+            removed++;
+         }
+      }
+      return removed;
+   }
+
+   String digest(Path file) throws IOException {
+      final String key = file.toAbsolutePath() + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis();
+      String digest = digests.get(key);
+      if (digest == null) {
+         digest = sha256(file);
+         digests.put(key, digest);
+      }
+      return digest;
+   }
+
+   private static String sha256(Path file) throws IOException {
+      final MessageDigest messageDigest;
+      try {
+         messageDigest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            messageDigest.update(buffer);
+            buffer.clear();
+         }
+      }
+      final StringBuilder hex = new StringBuilder(64);
+      for (byte b : messageDigest.digest()) {
+         hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+   }
+}
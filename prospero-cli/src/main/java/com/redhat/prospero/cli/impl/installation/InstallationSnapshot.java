@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.impl.installation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.api.Channel;
+import com.redhat.prospero.api.TransportSettings;
+import com.redhat.prospero.api.Manifest;
+import com.redhat.prospero.api.Package;
+
+/**
+ * Compact binary copy of an installation's manifest.xml and channels.json, stored in {@code .prospero/installation.snapshot}.
+ *
+ * The snapshot records the size and SHA-256 digest of both source files and is ignored as soon as either of them
+ * changes - the XML and JSON files stay the source of truth, and edits that keep the size and modification time are
+ * still detected. Hashing the files is much cheaper than parsing them. A valid snapshot is memory-mapped and only
+ * decoded when the manifest or channels are first requested.
+ */
+class InstallationSnapshot {
+
+   private static final int MAGIC = 0x50525353; // PRSS
+   private static final int FORMAT_VERSION = 4;
+   private static final int DIGEST_LENGTH = 32;
+
+   private final Path manifestFile;
+   private final ByteBuffer buffer;
+
+   private InstallationSnapshot(Path manifestFile, ByteBuffer buffer) {
+      this.manifestFile = manifestFile;
+      this.buffer = buffer;
+   }
+
+   static Path snapshotFile(Path base) {
+      return base.resolve(".prospero").resolve("installation.snapshot");
+   }
+
+   /**
+    * @return the snapshot if it exists and matches the current manifest.xml and channels.json, {@code null} otherwise
+    */
+   static InstallationSnapshot open(Path base, Path manifestFile, Path channelsFile) {
+      final Path snapshotFile = snapshotFile(base);
+      if (!Files.exists(snapshotFile)) {
+         return null;
+      }
+
+      try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+         final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+         }
+         if (!matches(buffer, manifestFile) || !matches(buffer, channelsFile)) {
+            return null;
+         }
+         return new InstallationSnapshot(manifestFile, buffer.slice());
+      } catch (IOException | BufferUnderflowException e) {
+         return null;
+      }
+   }
+
+   static void write(Path base, Path manifestFile, Path channelsFile, Manifest manifest, List<Channel> channels) {
+      final Path snapshotFile = snapshotFile(base);
+      try {
+         final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+         final DataOutputStream out = new DataOutputStream(bytes);
+         out.writeInt(MAGIC);
+         out.writeInt(FORMAT_VERSION);
+         out.writeLong(Files.size(manifestFile));
+         out.write(sha256(manifestFile));
+         out.writeLong(Files.size(channelsFile));
+         out.write(sha256(channelsFile));
+
+         out.writeInt(manifest.getPackages().size());
+         for (Package aPackage : manifest.getPackages()) {
+            writeString(out, aPackage.getGroupId());
+            writeString(out, aPackage.getArtifactId());
+            writeString(out, aPackage.getVersion());
+         }
+         out.writeInt(manifest.getArtifacts().size());
+         for (Artifact artifact : manifest.getArtifacts()) {
+            writeString(out, artifact.getGroupId());
+            writeString(out, artifact.getArtifactId());
+            writeString(out, artifact.getVersion());
+            writeString(out, artifact.getClassifier());
+         }
+         out.writeInt(channels.size());
+         for (Channel channel : channels) {
+            writeString(out, channel.getName());
+            writeString(out, channel.getUrl());
+            writeString(out, channel.getMirrorGroup());
+            writeTransport(out, channel.getTransport());
+         }
+         out.flush();
+
+         Files.createDirectories(snapshotFile.getParent());
+         final Path tmp = Files.createTempFile(snapshotFile.getParent(), "installation.snapshot", ".tmp");
+         try (OutputStream file = Files.newOutputStream(tmp)) {
+            bytes.writeTo(file);
+         }
+         Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+         // the snapshot is only an optimization, next start will read the XML again
+         System.out.println("Unable to store installation snapshot: " + e.getMessage());
+      }
+   }
+
+   // reads the size and digest recorded for one source file, comparing the digest only if the size matches
+   private static boolean matches(ByteBuffer in, Path file) throws IOException {
+      final long size = in.getLong();
+      final byte[] digest = new byte[DIGEST_LENGTH];
+      in.get(digest);
+      return size == Files.size(file) && MessageDigest.isEqual(digest, sha256(file));
+   }
+
+   private static byte[] sha256(Path file) throws IOException {
+      final MessageDigest messageDigest;
+      try {
+         messageDigest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            messageDigest.update(buffer);
+            buffer.clear();
+         }
+      }
+      return messageDigest.digest();
+   }
+
+   synchronized Manifest readManifest() {
+      final ByteBuffer in = buffer.duplicate();
+      final int packageCount = in.getInt();
+      final List<Package> packages = new ArrayList<>(packageCount);
+      for (int i = 0; i < packageCount; i++) {
+         packages.add(new Package(readString(in), readString(in), readString(in)));
+      }
+      final int artifactCount = in.getInt();
+      final List<Artifact> artifacts = new ArrayList<>(artifactCount);
+      for (int i = 0; i < artifactCount; i++) {
+         artifacts.add(new Artifact(readString(in), readString(in), readString(in), readString(in)));
+      }
+      return new Manifest(artifacts, packages, manifestFile);
+   }
+
+   synchronized List<Channel> readChannels() {
+      final ByteBuffer in = buffer.duplicate();
+      // skip the manifest section
+      final int packageCount = in.getInt();
+      for (int i = 0; i < packageCount * 3; i++) {
+         skipString(in);
+      }
+      final int artifactCount = in.getInt();
+      for (int i = 0; i < artifactCount * 4; i++) {
+         skipString(in);
+      }
+
+      final int channelCount = in.getInt();
+      final List<Channel> channels = new ArrayList<>(channelCount);
+      for (int i = 0; i < channelCount; i++) {
+         final Channel channel = new Channel(readString(in), readString(in));
+         channel.setMirrorGroup(readString(in));
+         channel.setTransport(readTransport(in));
+         channels.add(channel);
+      }
+      return channels;
+   }
+
+   private static void writeTransport(DataOutputStream out, TransportSettings transport) throws IOException {
+      out.writeBoolean(transport != null);
+      if (transport != null) {
+         writeString(out, toString(transport.getParallelDownloads()));
+         writeString(out, toString(transport.getShareConnections()));
+         writeString(out, toString(transport.getConnectTimeout()));
+         writeString(out, toString(transport.getReadTimeout()));
+         writeString(out, toString(transport.getRetries()));
+         writeString(out, toString(transport.getRetryBackoff()));
+      }
+   }
+
+   private static TransportSettings readTransport(ByteBuffer in) {
+      if (in.get() == 0) {
+         return null;
+      }
+      final TransportSettings transport = new TransportSettings();
+      transport.setParallelDownloads(readInteger(in));
+      final String shareConnections = readString(in);
+      transport.setShareConnections(shareConnections == null ? null : Boolean.valueOf(shareConnections));
+      transport.setConnectTimeout(readInteger(in));
+      transport.setReadTimeout(readInteger(in));
+      transport.setRetries(readInteger(in));
+      final String retryBackoff = readString(in);
+      transport.setRetryBackoff(retryBackoff == null ? null : Long.valueOf(retryBackoff));
+      return transport;
+   }
+
+   private static Integer readInteger(ByteBuffer in) {
+      final String value = readString(in);
+      return value == null ? null : Integer.valueOf(value);
+   }
+
+   private static String toString(Object value) {
+      return value == null ? null : value.toString();
+   }
+
+   private static void writeString(DataOutputStream out, String value) throws IOException {
+      if (value == null) {
+         out.writeInt(-1);
+         return;
+      }
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(ByteBuffer in) {
+      final int length = in.getInt();
+      if (length < 0) {
+         return null;
+      }
+      final byte[] bytes = new byte[length];
+      in.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   private static void skipString(ByteBuffer in) {
+      final int length = in.getInt();
+      if (length > 0) {
+         in.position(in.position() + length);
+      }
+   }
+}
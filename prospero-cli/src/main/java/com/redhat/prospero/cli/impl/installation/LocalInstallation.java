@@ -21,42 +21,66 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.redhat.prospero.api.Artifact;
 import com.redhat.prospero.api.Channel;
+import com.redhat.prospero.cli.api.ArtifactChange;
 import com.redhat.prospero.cli.api.Installation;
 import com.redhat.prospero.api.Manifest;
 import com.redhat.prospero.cli.api.PackageInstallationException;
 import com.redhat.prospero.xml.ManifestXmlSupport;
 import com.redhat.prospero.cli.xml.ModuleXmlSupport;
 import com.redhat.prospero.xml.XmlException;
-import net.lingala.zip4j.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
-import org.apache.commons.io.FileUtils;
 
 public class LocalInstallation implements Installation {
 
-   private final Manifest manifest;
    private final Path base;
    private final Modules modules;
-   private final List<Channel> channels;
+   private final ArtifactPlacement placement;
+   private final boolean readOnly;
+   // decoded lazily when loaded from a valid snapshot
+   private InstallationSnapshot snapshot;
+   private Manifest manifest;
+   private List<Channel> channels;
 
    public static LocalInstallation newInstallation(Path base, File basePackage) throws PackageInstallationException, XmlException, IOException {
       installPackage(basePackage, base);
-      return new LocalInstallation(base);
+      final LocalInstallation installation = new LocalInstallation(base);
+      installation.deduplicateModules();
+      installation.updateSnapshot();
+      return installation;
    }
 
    public LocalInstallation(Path base) throws XmlException, IOException {
+      this(base, false);
+   }
+
+   /**
+    * @param readOnly if set, reading the installation doesn't store anything in it - neither the module index nor the
+    *                 snapshot - so that e.g. planning an update leaves no trace
+    */
+   public LocalInstallation(Path base, boolean readOnly) throws XmlException, IOException {
       this.base = base;
-      manifest = ManifestXmlSupport.parse(base.resolve("manifest.xml").toFile());
-      modules = new Modules(base);
-      this.channels = Channel.readChannels(base.resolve("channels.json"));
+      this.readOnly = readOnly;
+      final Path manifestFile = base.resolve("manifest.xml");
+      final Path channelsFile = base.resolve("channels.json");
+      snapshot = InstallationSnapshot.open(base, manifestFile, channelsFile);
+      if (snapshot == null) {
+         manifest = ManifestXmlSupport.parse(manifestFile.toFile());
+         channels = Channel.readChannels(channelsFile);
+      }
+      modules = new Modules(base, readOnly);
+      this.placement = ArtifactPlacement.fromConfig(base);
    }
 
    @Override
    public void installPackage(File packageFile) throws PackageInstallationException {
       installPackage(packageFile, base);
+      deduplicateModules();
    }
 
    @Override
@@ -71,7 +95,7 @@ public class LocalInstallation implements Installation {
       //  drop jar into module folder
       updates.forEach(p -> {
          try {
-            FileUtils.copyFile(archiveFile, p.getParent().resolve(archiveFile.getName()).toFile());
+            placement.place(archiveFile, p.getParent().resolve(archiveFile.getName()));
          } catch (IOException e) {
             throw new RuntimeException(e);
          }
@@ -80,48 +104,103 @@ public class LocalInstallation implements Installation {
 
    @Override
    public void updateArtifact(Artifact oldArtifact, Artifact newArtifact, File artifactFile) throws PackageInstallationException {
-      Collection<Path> updates = modules.find(oldArtifact);
+      updateArtifacts(Collections.singletonList(new ArtifactChange(oldArtifact, newArtifact, artifactFile)));
+   }
 
-      if (updates.isEmpty()) {
-         throw new PackageInstallationException("Artifact " + oldArtifact.getFileName() + " not found");
-      }
+   @Override
+   public void updateArtifacts(List<ArtifactChange> changes) throws PackageInstallationException {
+      // group version changes by module, so each module.xml is rewritten only once
+      final Map<Path, Map<Artifact, Artifact>> moduleChanges = new LinkedHashMap<>();
+      for (ArtifactChange change : changes) {
+         Collection<Path> updates = modules.find(change.getOldVersion());
+
+         if (updates.isEmpty()) {
+            throw new PackageInstallationException("Artifact " + change.getOldVersion().getFileName() + " not found");
+         }
 
-      for (Path module : updates) {
-         // copy the new artifact
-         Path target = module.getParent();
-         try {
-            FileUtils.copyFile(artifactFile, target.resolve(newArtifact.getFileName()).toFile());
-         } catch (IOException e) {
-            throw new PackageInstallationException("Unable to install package " + newArtifact, e);
+         for (Path module : updates) {
+            // copy the new artifact
+            Path target = module.getParent();
+            try {
+               placement.place(change.getArtifactFile(), target.resolve(change.getNewVersion().getFileName()));
+            } catch (IOException e) {
+               throw new PackageInstallationException("Unable to install package " + change.getNewVersion(), e);
+            }
+            moduleChanges.computeIfAbsent(module, m -> new LinkedHashMap<>()).put(change.getOldVersion(), change.getNewVersion());
          }
+      }
 
-         // update model.xml
+      // update model.xml
+      for (Map.Entry<Path, Map<Artifact, Artifact>> entry : moduleChanges.entrySet()) {
          try {
-            ModuleXmlSupport.INSTANCE.updateVersionInModuleXml(module, oldArtifact, newArtifact);
+            ModuleXmlSupport.INSTANCE.updateVersionsInModuleXml(entry.getKey(), entry.getValue());
+            modules.refresh(entry.getKey());
          } catch (XmlException e) {
             throw new PackageInstallationException("Unable to write changes in module xml", e);
          }
+      }
+
+      // replaced jars may have been the last users of stored objects
+      try {
+         placement.sweep();
+      } catch (IOException e) {
+         throw new PackageInstallationException("Unable to remove unused content", e);
+      }
+
+      // update manifest.xml
+      for (ArtifactChange change : changes) {
+         getManifest().updateVersion(change.getNewVersion());
+      }
+   }
 
-         // update manifest.xml
-         manifest.updateVersion(newArtifact);
+   /**
+    * Stores a snapshot of the current manifest.xml and channels.json, so that later runs don't need to parse them.
+    * Only commands modifying the installation call this - opening an installation never writes to it.
+    */
+   public void updateSnapshot() {
+      if (readOnly) {
+         return;
       }
+      InstallationSnapshot.write(base, base.resolve("manifest.xml"), base.resolve("channels.json"), getManifest(), getChannels());
+   }
+
+   /**
+    * @return module.xml files referencing the artifact
+    */
+   public Collection<Path> findModules(Artifact artifact) {
+      return modules.find(artifact);
+   }
+
+   public Path getBase() {
+      return base;
    }
 
    @Override
-   public Manifest getManifest() {
+   public synchronized Manifest getManifest() {
+      if (manifest == null) {
+         manifest = snapshot.readManifest();
+      }
       return manifest;
    }
 
    @Override
-   public List<Channel> getChannels() {
+   public synchronized List<Channel> getChannels() {
+      if (channels == null) {
+         channels = snapshot.readChannels();
+      }
       return channels;
    }
 
-   private static void installPackage(File packageFile, Path base) throws PackageInstallationException {
+   private void deduplicateModules() throws PackageInstallationException {
       try {
-         new ZipFile(packageFile).extractAll(base.toString());
-      } catch (ZipException e) {
-         throw new PackageInstallationException("Error when extracting package: " + packageFile, e);
+         placement.deduplicate(base.resolve("modules"));
+         placement.sweep();
+      } catch (IOException e) {
+         throw new PackageInstallationException("Unable to deduplicate installed modules", e);
       }
    }
+
+   private static void installPackage(File packageFile, Path base) throws PackageInstallationException {
+      PackageExtractor.fromConfig().extract(packageFile, base);
+   }
 }
@@ -17,83 +17,218 @@
 
 package com.redhat.prospero.cli.impl.installation;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.redhat.prospero.api.Artifact;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import com.redhat.prospero.cli.xml.ModuleXmlSupport;
+import com.redhat.prospero.xml.XmlException;
 
+/**
+ * Maps resource-root jar names to the module.xml files referencing them.
+ *
+ * The mapping is persisted in {@code .prospero/module-index} inside the installation. Each module.xml is stored with its
+ * last modification time, so opening the index only re-parses module.xml files that were added or changed since it
+ * was written. A read-only instance uses the stored index but never writes it.
+ */
 public class Modules {
 
+   private static final String INDEX_HEADER = "# prospero module index v1";
+
    private final Path base;
-   private HashMap<String, Set<Path>> moduleMapping = new HashMap<>();
+   private final Path indexFile;
+   private final boolean readOnly;
+   // module.xml -> indexed state
+   private Map<Path, ModuleEntry> modules;
+   // jar name -> module.xml files
+   private final Map<String, Set<Path>> moduleMapping = new HashMap<>();
 
    public Modules(Path base) {
+      this(base, false);
+   }
+
+   public Modules(Path base, boolean readOnly) {
       this.base = base;
+      this.indexFile = base.resolve(".prospero").resolve("module-index");
+      this.readOnly = readOnly;
    }
 
-   public Collection<Path> find(Artifact artifact) {
-      try {
-         final Stream<Path> modules = Files.walk(base.resolve("modules"));
-         if (moduleMapping.containsKey(artifact.getFileName())) {
-            return moduleMapping.get(artifact.getFileName());
+   public synchronized Collection<Path> find(Artifact artifact) {
+      ensureIndex();
+      final Set<Path> paths = moduleMapping.get(artifact.getFileName());
+      if (paths == null) {
+         return Collections.emptyList();
+      }
+      return new ArrayList<>(paths);
+   }
+
+   /**
+    * Re-reads a module.xml after it was modified, so that following lookups see its new resource roots.
+    */
+   public synchronized void refresh(Path module) {
+      if (modules == null) {
+         return;
+      }
+      removeMapping(modules.remove(module));
+      final ModuleEntry entry = parse(module);
+      modules.put(module, entry);
+      addMapping(entry);
+   }
+
+   private void ensureIndex() {
+      if (modules != null) {
+         return;
+      }
+
+      final Map<Path, ModuleEntry> stored = readIndex();
+      modules = new HashMap<>();
+      boolean changed = false;
+      for (Path module : listModuleXmls()) {
+         ModuleEntry entry = stored.remove(module);
+         final long lastModified = lastModified(module);
+         if (entry == null || entry.lastModified != lastModified) {
+            entry = parse(module);
+            changed = true;
          }
-         List<Path> updates = modules.filter(p-> p.getFileName().toString().equals("module.xml"))
-            .filter(p->containsArtifact(p, artifact.getFileName())).collect(Collectors.toList());
+         modules.put(module, entry);
+         addMapping(entry);
+      }
+      // anything left in the stored index was removed from the installation
+      changed |= !stored.isEmpty();
+
+      if (changed && !readOnly) {
+         writeIndex();
+      }
+   }
 
-         return updates;
+   private List<Path> listModuleXmls() {
+      final Path modulesDir = base.resolve("modules");
+      if (!Files.isDirectory(modulesDir)) {
+         return Collections.emptyList();
+      }
+      try (Stream<Path> files = Files.walk(modulesDir)) {
+         return files.filter(p -> p.getFileName().toString().equals("module.xml")).collect(Collectors.toList());
       } catch (IOException e) {
          throw new RuntimeException(e);
       }
    }
 
-   private boolean containsArtifact(Path p, String artifactName) {
+   private ModuleEntry parse(Path module) {
       try {
-         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-         factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-         factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-         Document input = factory.newDocumentBuilder().parse(p.toFile());
-
-         XPath xpath = XPathFactory.newInstance().newXPath();
-         String expr = "//resources/resource-root";
-         NodeList nodes = (NodeList) xpath.evaluate(expr, input, XPathConstants.NODESET);
-         for (int i=0; i < nodes.getLength(); i++) {
-            Element node = (Element)nodes.item(i);
-            final String path = node.getAttribute("path");
-
-            if (!path.endsWith(".jar")) {
-               continue;
+         final List<String> jars = ModuleXmlSupport.INSTANCE.extractResourceRoots(module).stream()
+            .filter(path -> path.endsWith(".jar"))
+            .collect(Collectors.toList());
+         return new ModuleEntry(module, lastModified(module), jars);
+      } catch (XmlException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   private void addMapping(ModuleEntry entry) {
+      for (String jar : entry.jars) {
+         moduleMapping.computeIfAbsent(jar, k -> new LinkedHashSet<>()).add(entry.module);
+      }
+   }
+
+   private void removeMapping(ModuleEntry entry) {
+      if (entry == null) {
+         return;
+      }
+      for (String jar : entry.jars) {
+         final Set<Path> paths = moduleMapping.get(jar);
+         if (paths != null) {
+            paths.remove(entry.module);
+            if (paths.isEmpty()) {
+               moduleMapping.remove(jar);
             }
+         }
+      }
+   }
+
+   private static long lastModified(Path module) {
+      try {
+         return Files.getLastModifiedTime(module).toMillis();
+      } catch (IOException e) {
+         throw new RuntimeException(e);
+      }
+   }
 
-            // build cache of modules
-            if (!moduleMapping.containsKey(path)) {
-               moduleMapping.put(path, new HashSet<>());
+   private Map<Path, ModuleEntry> readIndex() {
+      final Map<Path, ModuleEntry> entries = new HashMap<>();
+      if (!Files.exists(indexFile)) {
+         return entries;
+      }
+
+      try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+         if (!INDEX_HEADER.equals(reader.readLine())) {
+            return entries;
+         }
+         String line;
+         while ((line = reader.readLine()) != null) {
+            final String[] parts = line.split("\t", -1);
+            if (parts.length != 3) {
+               // corrupted index, rebuild from scratch
+               entries.clear();
+               return entries;
             }
-            moduleMapping.get(path).add(p);
+            final Path module = base.resolve(parts[0]);
+            final List<String> jars = parts[2].isEmpty() ? Collections.emptyList() : Arrays.asList(parts[2].split(","));
+            entries.put(module, new ModuleEntry(module, Long.parseLong(parts[1]), jars));
+         }
+      } catch (IOException | NumberFormatException e) {
+         entries.clear();
+      }
+      return entries;
+   }
 
-            if (path.equals(artifactName)) {
-               return true;
+   private void writeIndex() {
+      try {
+         Files.createDirectories(indexFile.getParent());
+         final Path tmp = Files.createTempFile(indexFile.getParent(), "module-index", ".tmp");
+         try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(INDEX_HEADER);
+            writer.newLine();
+            for (ModuleEntry entry : modules.values()) {
+               writer.write(base.relativize(entry.module).toString());
+               writer.write('\t');
+               writer.write(Long.toString(entry.lastModified));
+               writer.write('\t');
+               writer.write(String.join(",", entry.jars));
+               writer.newLine();
             }
          }
-         return false;
-      } catch (Exception e) {
-         throw new RuntimeException(e);
+         Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+         // the index is only an optimization, it will be rebuilt on next start
+         System.out.println("Unable to store module index: " + e.getMessage());
       }
    }
 
+   private static class ModuleEntry {
+      private final Path module;
+      private final long lastModified;
+      private final List<String> jars;
+
+      ModuleEntry(Path module, long lastModified, List<String> jars) {
+         this.module = module;
+         this.lastModified = lastModified;
+         this.jars = jars;
+      }
+   }
 }
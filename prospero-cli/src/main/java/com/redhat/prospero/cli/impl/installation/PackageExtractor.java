@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.cli.impl.installation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.redhat.prospero.cli.api.PackageInstallationException;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+/**
+ * Extracts package archives, optionally splitting the entries across {@code prospero.install.extract.threads} workers.
+ *
+ * Each worker opens its own {@link ZipFile}, so the archive is read through independent random-access handles and
+ * file attributes are restored the same way as by {@link ZipFile#extractAll(String)}.
+ */
+public class PackageExtractor {
+
+   public static final String THREADS_PROPERTY = "prospero.install.extract.threads";
+
+   private final int threads;
+
+   public PackageExtractor(int threads) {
+      this.threads = Math.max(1, threads);
+   }
+
+   public static PackageExtractor fromConfig() {
+      return new PackageExtractor(ConfigProvider.getConfig().getOptionalValue(THREADS_PROPERTY, Integer.class).orElse(1));
+   }
+
+   public void extract(File packageFile, Path target) throws PackageInstallationException {
+      try {
+         if (threads == 1) {
+            try (ZipFile zipFile = new ZipFile(packageFile)) {
+               zipFile.extractAll(target.toString());
+            }
+         } else {
+            extractConcurrently(packageFile, target);
+         }
+      } catch (IOException e) {
+         throw new PackageInstallationException("Error when extracting package: " + packageFile, e);
+      }
+   }
+
+   private void extractConcurrently(File packageFile, Path target) throws IOException, PackageInstallationException {
+      final List<FileHeader> headers;
+      try (ZipFile zipFile = new ZipFile(packageFile)) {
+         headers = zipFile.getFileHeaders();
+      }
+
+      // create the directory tree up front, so workers don't race creating the same parents
+      final Path root = target.toAbsolutePath().normalize();
+      final List<FileHeader> files = new ArrayList<>(headers.size());
+      for (FileHeader header : headers) {
+         final Path path = root.resolve(header.getFileName()).normalize();
+         if (!path.startsWith(root)) {
+            throw new PackageInstallationException("Illegal entry outside of the target directory: " + header.getFileName());
+         }
+         if (header.isDirectory()) {
+            Files.createDirectories(path);
+         } else {
+            Files.createDirectories(path.getParent());
+            files.add(header);
+         }
+      }
+
+      // balance the work by assigning the largest entries first to the least loaded worker
+      final int workers = Math.min(threads, Math.max(1, files.size()));
+      final List<List<FileHeader>> partitions = new ArrayList<>(workers);
+      final long[] load = new long[workers];
+      for (int i = 0; i < workers; i++) {
+         partitions.add(new ArrayList<>());
+      }
+      files.sort(Comparator.comparingLong(FileHeader::getUncompressedSize).reversed());
+      for (FileHeader header : files) {
+         int lightest = 0;
+         for (int i = 1; i < workers; i++) {
+            if (load[i] < load[lightest]) {
+               lightest = i;
+            }
+         }
+         partitions.get(lightest).add(header);
+         load[lightest] += header.getUncompressedSize();
+      }
+
+      final ExecutorService executor = Executors.newFixedThreadPool(workers);
+      try {
+         final List<Future<Void>> results = new ArrayList<>(workers);
+         for (List<FileHeader> partition : partitions) {
+            results.add(executor.submit(() -> {
+               try (ZipFile zipFile = new ZipFile(packageFile)) {
+                  for (FileHeader header : partition) {
+                     zipFile.extractFile(header, root.toString());
+                  }
+               }
+               return null;
+            }));
+         }
+         for (Future<Void> result : results) {
+            result.get();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new PackageInstallationException("Interrupted when extracting package: " + packageFile, e);
+      } catch (ExecutionException e) {
+         throw new PackageInstallationException("Error when extracting package: " + packageFile, e.getCause());
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+}
@@ -21,16 +21,16 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.TreeSet;
 
 import com.redhat.prospero.api.ArtifactDependencies;
 import com.redhat.prospero.api.ArtifactNotFoundException;
+import com.redhat.prospero.api.ComparableVersions;
 import com.redhat.prospero.api.Gav;
 import com.redhat.prospero.api.Repository;
 import com.redhat.prospero.cli.xml.ArtifactDependencyReader;
 import com.redhat.prospero.xml.XmlException;
-import org.apache.maven.artifact.versioning.ComparableVersion;
 
 public class LocalRepository implements Repository {
 
@@ -53,21 +53,23 @@ public class LocalRepository implements Repository {
    public Gav findLatestVersionOf(Gav artifact) {
       final String[] versions = listVersions(artifact);
 
-      Gav latestVersion = null;
       if (versions == null || versions.length == 0) {
          return artifact;
       }
-      if (versions.length > 1) {
-         final TreeSet<ComparableVersion> comparableVersions = new TreeSet<>();
-         for (String version : versions) {
-            comparableVersions.add(new ComparableVersion(version));
-         }
 
-         String latestVersionSting = comparableVersions.descendingSet().first().toString();
-         return artifact.newVersion(latestVersionSting);
-      } else {
-         return artifact.newVersion(versions[0]);
+      String latestVersion = versions[0];
+      for (int i = 1; i < versions.length; i++) {
+         if (ComparableVersions.compare(versions[i], latestVersion) > 0) {
+            latestVersion = versions[i];
+         }
       }
+      return artifact.newVersion(latestVersion);
+   }
+
+   @Override
+   public long getDownloadSize(Gav artifact) {
+      // artifacts are read in place
+      return 0;
    }
 
    @Override
@@ -81,13 +83,11 @@ public class LocalRepository implements Repository {
             return null;
          }
 
-         final TreeSet<ComparableVersion> comparableVersions = new TreeSet<>();
-         for (String version : versions) {
-            comparableVersions.add(new ComparableVersion(version));
-         }
+         final List<String> sortedVersions = new ArrayList<>(Arrays.asList(versions));
+         sortedVersions.sort((v1, v2) -> ComparableVersions.compare(v2, v1));
 
-         for (ComparableVersion comparableVersion : comparableVersions.descendingSet()) {
-            final Path path = base.resolve(getRelativePath(latestVersion.newVersion(comparableVersion.toString())).getParent()).resolve("dependencies.xml");
+         for (String version : sortedVersions) {
+            final Path path = base.resolve(getRelativePath(latestVersion.newVersion(version)).getParent()).resolve("dependencies.xml");
             if (path.toFile().exists()) {
                return ArtifactDependencyReader.parse(path.toFile());
             }
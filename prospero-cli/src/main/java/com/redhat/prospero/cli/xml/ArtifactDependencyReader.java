@@ -17,77 +17,94 @@
 
 package com.redhat.prospero.cli.xml;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.redhat.prospero.api.Artifact;
 import com.redhat.prospero.api.ArtifactDependencies;
 import com.redhat.prospero.xml.XmlException;
 import com.redhat.prospero.xml.XmlSupport;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 public class ArtifactDependencyReader extends XmlSupport {
 
    private static final ArtifactDependencyReader INSTANCE = new ArtifactDependencyReader();
+   private static final Set<String> ARTIFACT_FIELDS = new HashSet<>(Arrays.asList("group", "name", "version", "classifier"));
 
    public static ArtifactDependencies parse(File descriptorFile) throws XmlException {
       return INSTANCE.doParse(descriptorFile);
    }
 
    private ArtifactDependencies doParse(File descriptorFile) throws XmlException {
-      Document input = readDocument(descriptorFile);
-
-      String group = readTextValue(input, "/artifact/group");
-      String name = readTextValue(input, "/artifact/name");
-      String version = readTextValue(input, "/artifact/version");
-      String classifier = readTextValue(input, "/artifact/classifier");
-
-      NodeList nodes = nodesFromXPath(input, "//dependencies/dependency");
-      ArrayList<Artifact> deps = new ArrayList<>(nodes.getLength());
-      for (int i = 0; i < nodes.getLength(); i++) {
-         deps.add(parseDependency(nodes.item(i)));
-      }
+      return readStream(descriptorFile, reader -> {
+         final Map<String, List<String>> values = new HashMap<>();
+         final ArrayList<Artifact> deps = new ArrayList<>();
+         final Deque<String> path = new ArrayDeque<>();
+         while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+               final String name = reader.getLocalName();
+               if (path.size() == 1 && "artifact".equals(path.peek()) && ARTIFACT_FIELDS.contains(name)) {
+                  values.computeIfAbsent(name, k -> new ArrayList<>()).add(reader.getElementText());
+               } else if ("dependency".equals(name) && "dependencies".equals(path.peek())) {
+                  deps.add(parseDependency(reader));
+               } else {
+                  path.push(name);
+               }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+               path.pop();
+            }
+         }
 
-      return new ArtifactDependencies(new Artifact(group, name, version, classifier), deps);
+         return new ArtifactDependencies(new Artifact(readTextValue(values, "group"),
+                                                      readTextValue(values, "name"),
+                                                      readTextValue(values, "version"),
+                                                      readTextValue(values, "classifier")), deps);
+      });
    }
 
-   private String readTextValue(Node input, String expr) throws XmlException {
-      NodeList nodes = nodesFromXPath(input, expr);
+   private String readTextValue(Map<String, List<String>> values, String field) throws XmlException {
+      final List<String> found = values.get(field);
 
-      if (nodes.getLength() != 1) {
-         throw new XmlException(String.format("Parse error: should only have one %s node", expr));
+      if (found == null || found.size() != 1) {
+         throw new XmlException(String.format("Parse error: should only have one /artifact/%s node", field));
       }
 
-      return nodes.item(0).getTextContent();
+      return found.get(0);
    }
 
-   private Artifact parseDependency(Node dep) throws XmlException {
+   // consumes the dependency element up to its end tag
+   private Artifact parseDependency(XMLStreamReader reader) throws XMLStreamException, XmlException {
       String group = null;
       String name = null;
       String minVersion = null;
       String classifier = null;
-      for (int i = 0; i < dep.getChildNodes().getLength(); i++) {
-         final Node node = dep.getChildNodes().item(i);
-         switch (node.getNodeName()) {
+      while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+         switch (reader.getLocalName()) {
             case "group":
-               group = node.getTextContent();
+               group = reader.getElementText();
                break;
             case "name":
-               name = node.getTextContent();
+               name = reader.getElementText();
                break;
             case "minVersion":
-               minVersion = node.getTextContent();
+               minVersion = reader.getElementText();
                break;
             case "classifier":
-               classifier = node.getTextContent();
-               break;
-            case  "#text":
-               // ignore
+               classifier = reader.getElementText();
                break;
             default:
-               throw new XmlException("Unexpected element in dependency descriptor: " + node.getNodeName());
+               throw new XmlException("Unexpected element in dependency descriptor: " + reader.getLocalName());
          }
       }
 
@@ -18,17 +18,21 @@
 package com.redhat.prospero.cli.xml;
 
 import javax.xml.XMLConstants;
-import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import com.redhat.prospero.api.Artifact;
 import com.redhat.prospero.xml.XmlException;
@@ -41,34 +45,50 @@ public class ModuleXmlSupport extends XmlSupport {
 
    public static final ModuleXmlSupport INSTANCE = new ModuleXmlSupport();
 
-   public List<String> extractArtifacts(Path module) throws XmlException {
+   private static final ThreadLocal<TransformerFactory> TRANSFORMER_FACTORY = ThreadLocal.withInitial(() -> {
       try {
-         Document input = readDocument(module.toFile());
-
-         NodeList nodes = nodesFromXPath(input, "//resources/artifact");
+         TransformerFactory transformerFactory = TransformerFactory.newInstance();
+         transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+         return transformerFactory;
+      } catch (TransformerConfigurationException e) {
+         throw new IllegalStateException(e);
+      }
+   });
 
-         final ArrayList<String> gavs = new ArrayList<>();
-         for (int i = 0; i < nodes.getLength(); i++) {
-            Element value = (Element) nodes.item(i);
-            final String gav = value.getAttribute("name");
-            gavs.add(gav);
-         }
-         return gavs;
+   public List<String> extractArtifacts(Path module) throws XmlException {
+      try {
+         return readAttributes(module.toFile(), "resources", "artifact", "name");
       } catch (Exception e) {
          throw new XmlException("Error reading artifacts in module XML", e);
       }
    }
 
+   public List<String> extractResourceRoots(Path module) throws XmlException {
+      return readAttributes(module.toFile(), "resources", "resource-root", "path");
+   }
+
    public void updateVersionInModuleXml(Path module, Artifact oldVersion, Artifact newVersion) throws XmlException {
+      updateVersionsInModuleXml(module, Collections.singletonMap(oldVersion, newVersion));
+   }
+
+   /**
+    * Applies all old -> new version changes of a module in a single read and a single write of its module.xml.
+    */
+   public void updateVersionsInModuleXml(Path module, Map<Artifact, Artifact> changes) throws XmlException {
       Document input = readDocument(module.toFile());
 
-      String expr = String.format("//resources/resource-root[contains(@path, '%s')]", oldVersion.getFileName());
-      NodeList nodes = nodesFromXPath(input, expr);
+      NodeList nodes = nodesFromXPath(input, "//resources/resource-root");
 
       for (int i = 0; i < nodes.getLength(); i++) {
-         Element oldNode = (Element) nodes.item(i);
-
-         oldNode.setAttribute("path", newVersion.getFileName());
+         Element node = (Element) nodes.item(i);
+         final String path = node.getAttribute("path");
+
+         for (Map.Entry<Artifact, Artifact> change : changes.entrySet()) {
+            if (path.contains(change.getKey().getFileName())) {
+               node.setAttribute("path", change.getValue().getFileName());
+               break;
+            }
+         }
       }
 
       transform(module, input);
@@ -106,16 +126,25 @@ public class ModuleXmlSupport extends XmlSupport {
    }
 
    private void transform(Path module, Document input) throws XmlException {
+      Path tmp = null;
       try {
-         TransformerFactory transformerFactory = TransformerFactory.newInstance();
-         transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-         Transformer xformer = transformerFactory.newTransformer();
-         Writer output = new FileWriter(module.toFile());
-         xformer.transform(new DOMSource(input), new StreamResult(output));
+         tmp = Files.createTempFile(module.getParent(), module.getFileName().toString(), ".tmp");
+         try (Writer output = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            TRANSFORMER_FACTORY.get().newTransformer().transform(new DOMSource(input), new StreamResult(output));
+         }
+         copyFileAttributes(module, tmp);
+         // replace the descriptor in one step, so a failure never leaves a half-written module.xml behind
+         Files.move(tmp, module, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
       } catch (TransformerException | IOException e) {
          throw new XmlException("Error writting updated module.xml", e);
+      } finally {
+         if (tmp != null) {
+            try {
+               Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+               // ignore
+            }
+         }
       }
    }
-
-
 }
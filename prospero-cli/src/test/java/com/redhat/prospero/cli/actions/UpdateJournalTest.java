@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.redhat.prospero.cli.actions;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import com.redhat.prospero.api.Artifact;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UpdateJournalTest {
+
+   private static final Update.UpdateAction FIRST = new Update.UpdateAction(new Artifact("org.test", "first", "1.0", "", "jar"),
+                                                                             new Artifact("org.test", "first", "1.1", "", "jar"));
+   private static final Update.UpdateAction SECOND = new Update.UpdateAction(new Artifact("org.test", "second", "2.0", "", "jar"),
+                                                                              new Artifact("org.test", "second", "2.1", "", "jar"));
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private Path base;
+   private Path journalFile;
+
+   @Before
+   public void setUp() throws Exception {
+      base = temp.newFolder("installation").toPath();
+      journalFile = base.resolve(".prospero").resolve("update.journal");
+   }
+
+   @Test
+   public void plannedUpdatesAreLoaded() throws Exception {
+      final UpdateJournal journal = new UpdateJournal(base);
+      journal.start(Arrays.asList(FIRST, SECOND));
+      journal.close();
+
+      final List<Update.UpdateAction> planned = new UpdateJournal(base).load();
+
+      assertEquals(2, planned.size());
+      assertEquals("2.1", planned.get(1).getNewVersion().getVersion());
+   }
+
+   @Test
+   public void plannedRecordCutOffMidVersionIsIgnored() throws Exception {
+      final UpdateJournal journal = new UpdateJournal(base);
+      journal.start(Arrays.asList(FIRST, SECOND));
+      journal.close();
+      // the crash hit while the second record was written, in the middle of its new version
+      final String content = new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+      Files.write(journalFile, content.substring(0, content.length() - 2).getBytes(StandardCharsets.UTF_8));
+
+      final List<Update.UpdateAction> planned = new UpdateJournal(base).load();
+
+      assertEquals(1, planned.size());
+      assertEquals("first", planned.get(0).getOldVersion().getArtifactId());
+   }
+
+   @Test
+   public void resumedJournalContinuesAfterTornRecord() throws Exception {
+      final File downloadedFile = temp.newFile("second-2.1.jar");
+      final UpdateJournal journal = new UpdateJournal(base);
+      journal.start(Arrays.asList(FIRST, SECOND));
+      journal.close();
+      Files.write(journalFile, "DOWNLOADED\torg.test:fir".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+      final UpdateJournal resumed = new UpdateJournal(base);
+      assertEquals(2, resumed.load().size());
+      assertNull(resumed.getDownloaded(FIRST));
+      resumed.resume();
+      resumed.downloaded(SECOND, downloadedFile);
+      resumed.close();
+
+      final UpdateJournal reloaded = new UpdateJournal(base);
+      assertEquals(2, reloaded.load().size());
+      assertNull(reloaded.getDownloaded(FIRST));
+      assertEquals(downloadedFile.getAbsoluteFile(), reloaded.getDownloaded(SECOND));
+   }
+}
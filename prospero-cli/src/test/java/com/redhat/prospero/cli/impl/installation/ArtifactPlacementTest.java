@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.redhat.prospero.cli.impl.installation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+
+import io.smallrye.config.PropertiesConfigSource;
+import io.smallrye.config.SmallRyeConfigBuilder;
+import org.eclipse.microprofile.config.Config;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArtifactPlacementTest {
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private Path source;
+   private Path target;
+
+   @Before
+   public void setUp() throws IOException {
+      source = temp.newFolder("cache").toPath().resolve("artifact-1.0.jar");
+      Files.write(source, "artifact content".getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(source, FileTime.fromMillis(1_000_000L));
+      target = temp.newFolder("module").toPath().resolve("artifact-1.0.jar");
+   }
+
+   @Test
+   public void linkStrategyCreatesHardLink() throws Exception {
+      new ArtifactPlacement(ArtifactPlacement.Strategy.LINK).place(source.toFile(), target);
+
+      assertTrue(Files.isSameFile(source, target));
+   }
+
+   @Test
+   public void linkStrategyFallsBackToCopyWhenLinkingFails() throws Exception {
+      final ArtifactPlacement placement = new ArtifactPlacement(ArtifactPlacement.Strategy.LINK) {
+         @Override
+         void createLink(Path link, Path existing) throws IOException {
+            throw new FileSystemException(link.toString(), existing.toString(), "Invalid cross-device link");
+         }
+      };
+
+      placement.place(source.toFile(), target);
+
+      assertFalse(Files.isSameFile(source, target));
+      assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+   }
+
+   @Test
+   public void copyStrategyCopiesContentAndModificationTime() throws Exception {
+      new ArtifactPlacement(ArtifactPlacement.Strategy.COPY).place(source.toFile(), target);
+
+      assertFalse(Files.isSameFile(source, target));
+      assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+      assertEquals(Files.getLastModifiedTime(source), Files.getLastModifiedTime(target));
+   }
+
+   @Test
+   public void copyOverLinkedTargetLeavesSourceIntact() throws Exception {
+      new ArtifactPlacement(ArtifactPlacement.Strategy.LINK).place(source.toFile(), target);
+      final Path update = source.resolveSibling("artifact-1.1.jar");
+      Files.write(update, "updated content".getBytes(StandardCharsets.UTF_8));
+
+      new ArtifactPlacement(ArtifactPlacement.Strategy.COPY).place(update.toFile(), target);
+
+      assertEquals("artifact content", new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+      assertEquals("updated content", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void storeStrategyCopiesIntoStoreAndSweepsUnusedObjects() throws Exception {
+      final Path installation = temp.newFolder("installation").toPath();
+      final ContentStore store = ContentStore.forInstallation(installation);
+      final ArtifactPlacement placement = new ArtifactPlacement(ArtifactPlacement.Strategy.STORE, store);
+      Assume.assumeTrue(installation.getFileSystem().supportedFileAttributeViews().contains("unix"));
+
+      placement.place(source.toFile(), target);
+      final Path object = store.store(source);
+
+      assertTrue(Files.isSameFile(object, target));
+      assertFalse(Files.isSameFile(object, source));
+
+      placement.sweep();
+      assertTrue(Files.exists(object));
+
+      Files.delete(target);
+      placement.sweep();
+      assertFalse(Files.exists(object));
+   }
+
+   @Test
+   public void strategyIsReadFromConfig() throws Exception {
+      final Path installation = temp.newFolder("installation").toPath();
+
+      assertEquals(ArtifactPlacement.Strategy.LINK, ArtifactPlacement.fromConfig(config(null), installation).getStrategy());
+      assertEquals(ArtifactPlacement.Strategy.STORE, ArtifactPlacement.fromConfig(config("store"), installation).getStrategy());
+
+      assertEquals(ArtifactPlacement.Strategy.COPY, ArtifactPlacement.fromConfig(config("copy"), installation).getStrategy());
+      assertEquals(ArtifactPlacement.Strategy.LINK, ArtifactPlacement.fromConfig(config("LINK"), installation).getStrategy());
+   }
+
+   private static Config config(String strategy) {
+      final Map<String, String> properties = strategy == null ? Collections.emptyMap()
+         : Collections.singletonMap(ArtifactPlacement.STRATEGY_PROPERTY, strategy);
+      return new SmallRyeConfigBuilder()
+         .withSources(new PropertiesConfigSource(properties, "test", 100))
+         .build();
+   }
+}
@@ -22,25 +22,33 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class Channel {
 
+   // ObjectMapper is thread safe once configured, and expensive to create
+   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
    public static void writeChannels(List<Channel> channels, File channelsFile) throws IOException {
-      new ObjectMapper().writeValue(channelsFile, channels);
+      OBJECT_MAPPER.writeValue(channelsFile, channels);
    }
 
    public static List<Channel> readChannels(Path path) throws IOException {
-      final ObjectMapper objectMapper = new ObjectMapper();
-      JavaType type = objectMapper.getTypeFactory().constructCollectionType(List.class, Channel.class);
-      final List<Channel> channels = objectMapper.readValue(path.toFile(), type);
+      JavaType type = OBJECT_MAPPER.getTypeFactory().constructCollectionType(List.class, Channel.class);
+      final List<Channel> channels = OBJECT_MAPPER.readValue(path.toFile(), type);
 
       return channels;
    }
 
    private String name;
    private String url;
+   // channels in the same mirror group serve the same content and may be reordered or skipped
+   @JsonInclude(JsonInclude.Include.NON_NULL)
+   private String mirrorGroup;
+   @JsonInclude(JsonInclude.Include.NON_NULL)
+   private TransportSettings transport;
 
    public Channel() {
 
@@ -67,8 +75,25 @@ public class Channel {
       this.url = url;
    }
 
+   public String getMirrorGroup() {
+      return mirrorGroup;
+   }
+
+   public void setMirrorGroup(String mirrorGroup) {
+      this.mirrorGroup = mirrorGroup;
+   }
+
+   public TransportSettings getTransport() {
+      return transport;
+   }
+
+   public void setTransport(TransportSettings transport) {
+      this.transport = transport;
+   }
+
    @Override
    public String toString() {
-      return "Channel{" + "name='" + name + '\'' + ", url='" + url + '\'' + '}';
+      return "Channel{" + "name='" + name + '\'' + ", url='" + url + '\'' + ", mirrorGroup='" + mirrorGroup + '\'' +
+         ", transport=" + transport + '}';
    }
 }
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.api;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * Bounded, thread-safe cache of parsed versions. The same version strings are compared over and over during update
+ * discovery and sorting, so they are tokenized only once. Returned instances are shared and must not be modified.
+ */
+public final class ComparableVersions {
+
+   static final int MAX_ENTRIES = 8192;
+
+   private static final Map<String, ComparableVersion> CACHE = new ConcurrentHashMap<>();
+
+   private ComparableVersions() {
+   }
+
+   public static ComparableVersion parse(String version) {
+      ComparableVersion parsed = CACHE.get(version);
+      if (parsed == null) {
+         if (CACHE.size() >= MAX_ENTRIES) {
+            // cheaper than tracking recency, and the working set of a run is far below the limit
+            CACHE.clear();
+         }
+         parsed = new ComparableVersion(version);
+         CACHE.putIfAbsent(version, parsed);
+      }
+      return parsed;
+   }
+
+   public static int compare(String version1, String version2) {
+      return parse(version1).compareTo(parse(version2));
+   }
+}
@@ -17,6 +17,8 @@
 
 package com.redhat.prospero.api;
 
+import java.util.Objects;
+
 import org.apache.maven.artifact.versioning.ComparableVersion;
 
 public abstract class Gav {
@@ -26,6 +28,8 @@ public abstract class Gav {
    protected final String version;
    protected final String classifier;
    protected final String packaging;
+   // parsed lazily, Gav is immutable so the value never changes
+   private volatile ComparableVersion comparableVersion;
 
    public Gav(String groupId, String artifactId, String version, String classifier, String packaging) {
       this.groupId = groupId;
@@ -63,12 +67,40 @@ public abstract class Gav {
       }
    }
 
+   public ComparableVersion getComparableVersion() {
+      ComparableVersion parsed = comparableVersion;
+      if (parsed == null) {
+         parsed = ComparableVersions.parse(version);
+         comparableVersion = parsed;
+      }
+      return parsed;
+   }
+
    public int compareVersion(Gav other) {
-      return new ComparableVersion(this.getVersion()).compareTo(new ComparableVersion(other.getVersion()));
+      return getComparableVersion().compareTo(other.getComparableVersion());
    }
 
    public abstract Gav newVersion(String latestVersionSting);
 
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+      Gav gav = (Gav) o;
+      return Objects.equals(groupId, gav.groupId) && Objects.equals(artifactId, gav.artifactId)
+         && Objects.equals(version, gav.version) && Objects.equals(classifier, gav.classifier)
+         && Objects.equals(packaging, gav.packaging);
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hash(groupId, artifactId, version, classifier, packaging);
+   }
+
    @Override
    public String toString() {
       return "Gav{" + "groupId='" + groupId + '\'' + ", artifactId='" + artifactId + '\'' + ", version='" + version + '\'' + ", classifier='" + classifier + '\'' + ", packaging='" + packaging + '\'' + '}';
@@ -19,7 +19,8 @@ package com.redhat.prospero.api;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,12 +29,23 @@ import com.redhat.prospero.xml.XmlException;
 
 public class Manifest {
 
-   private final List<Artifact> artifacts;
+   // keyed by groupId:artifactId:classifier, in insertion order so the manifest is written in a stable order
+   private final Map<String, Artifact> artifacts;
    private final Path manifestFile;
    private final List<Package> packages;
+   // read-only snapshot returned by getArtifacts(), dropped when a version changes
+   private List<Artifact> artifactsView;
 
    public Manifest(List<Artifact> artifacts, List<Package> packages, Path manifestFile) {
-      this.artifacts = artifacts;
+      this.artifacts = new LinkedHashMap<>(Math.max(16, artifacts.size() * 4 / 3 + 1));
+      for (Artifact artifact : artifacts) {
+         final Artifact duplicate = this.artifacts.putIfAbsent(key(artifact), artifact);
+         if (duplicate != null) {
+            throw new IllegalArgumentException(String.format("Duplicate manifest entries for %s:%s:%s - versions %s and %s",
+                                                             artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(),
+                                                             duplicate.getVersion(), artifact.getVersion()));
+         }
+      }
       this.packages = packages;
       this.manifestFile = manifestFile;
    }
@@ -42,8 +54,15 @@ public class Manifest {
       return ManifestXmlSupport.parse(manifestPath.toFile());
    }
 
+   /**
+    * @return read-only snapshot of the artifacts, not affected by later version updates. The snapshot is shared by
+    * calls until the next update, so repeated calls don't copy the artifacts.
+    */
    public List<Artifact> getArtifacts() {
-      return new ArrayList<>(artifacts);
+      if (artifactsView == null) {
+         artifactsView = Collections.unmodifiableList(new ArrayList<>(artifacts.values()));
+      }
+      return artifactsView;
    }
 
    public List<Package> getPackages() {
@@ -56,29 +75,21 @@ public class Manifest {
 
    public void updateVersion(Artifact newVersion) {
       // we can only update if we have old version of the same artifact
-      Artifact oldArtifact = null;
-      for (Artifact artifact : artifacts) {
-         if (artifact.getGroupId().equals(newVersion.getGroupId()) && artifact.getArtifactId().equals(newVersion.getArtifactId()) && artifact.getClassifier().equals(newVersion.getClassifier())) {
-            oldArtifact = artifact;
-            break;
-         }
-      }
-
-      if (oldArtifact == null) {
+      final String key = key(newVersion);
+      if (!artifacts.containsKey(key)) {
          throw new RuntimeException("Previous verison of " + newVersion.getFileName() + " not found.");
       }
 
-      artifacts.remove(oldArtifact);
-      artifacts.add(newVersion);
+      artifacts.put(key, newVersion);
+      artifactsView = null;
    }
 
    public Artifact find(Gav gav) {
-      for (Artifact artifact : artifacts) {
-         // TODO: move to Gav
-         if (artifact.getGroupId().equals(gav.getGroupId()) && artifact.getArtifactId().equals(gav.getArtifactId()) && artifact.getClassifier().equals(gav.getClassifier())) {
-            return artifact;
-         }
-      }
-      return null;
+      return artifacts.get(key(gav));
+   }
+
+   private static String key(Gav gav) {
+      final String classifier = gav.getClassifier() == null ? "" : gav.getClassifier();
+      return gav.getGroupId() + ":" + gav.getArtifactId() + ":" + classifier;
    }
 }
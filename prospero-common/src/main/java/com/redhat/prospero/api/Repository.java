@@ -8,7 +8,23 @@ public interface Repository {
 
    File resolve(Gav artifact) throws ArtifactNotFoundException;
 
+   /**
+    * Resolves {@code target} as an update of {@code installed}, whose current file is {@code installedFile}. Repositories
+    * able to rebuild the new file from the installed one can avoid downloading it in full.
+    */
+   default File resolveUpdate(Gav installed, File installedFile, Gav target) throws ArtifactNotFoundException {
+      return resolve(target);
+   }
+
    Gav findLatestVersionOf(Gav artifact);
 
    ArtifactDependencies resolveDescriptor(Gav latestVersion) throws XmlException;
+
+   /**
+    * @return number of bytes {@link #resolve(Gav)} would download for the artifact, 0 if it is already available locally
+    * or -1 if the size can't be determined without downloading it
+    */
+   default long getDownloadSize(Gav artifact) {
+      return -1;
+   }
 }
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Optional connection tuning of a {@link Channel}, read from the {@code transport} element of channels.json.
+ * Settings left out fall back to the Aether defaults. Timeouts and back-off are in milliseconds.
+ *
+ * Timeouts and retries apply to the channel alone. Aether has no per-repository setting for parallel downloads or
+ * connection sharing, so {@code parallelDownloads} and {@code shareConnections} apply to the whole session: the largest
+ * value of any channel wins, and connections are shared if any channel asks for it.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransportSettings {
+
+   // number of artifacts downloaded in parallel from each repository
+   private Integer parallelDownloads;
+   // keep HTTP connections and authentication state between requests instead of opening new ones for each transfer
+   private Boolean shareConnections;
+   private Integer connectTimeout;
+   private Integer readTimeout;
+   // number of additional attempts after a failed transfer, each waiting twice as long as the previous one
+   private Integer retries;
+   private Long retryBackoff;
+
+   public Integer getParallelDownloads() {
+      return parallelDownloads;
+   }
+
+   public void setParallelDownloads(Integer parallelDownloads) {
+      this.parallelDownloads = parallelDownloads;
+   }
+
+   public Boolean getShareConnections() {
+      return shareConnections;
+   }
+
+   public void setShareConnections(Boolean shareConnections) {
+      this.shareConnections = shareConnections;
+   }
+
+   public Integer getConnectTimeout() {
+      return connectTimeout;
+   }
+
+   public void setConnectTimeout(Integer connectTimeout) {
+      this.connectTimeout = connectTimeout;
+   }
+
+   public Integer getReadTimeout() {
+      return readTimeout;
+   }
+
+   public void setReadTimeout(Integer readTimeout) {
+      this.readTimeout = readTimeout;
+   }
+
+   public Integer getRetries() {
+      return retries;
+   }
+
+   public void setRetries(Integer retries) {
+      this.retries = retries;
+   }
+
+   public Long getRetryBackoff() {
+      return retryBackoff;
+   }
+
+   public void setRetryBackoff(Long retryBackoff) {
+      this.retryBackoff = retryBackoff;
+   }
+
+   @Override
+   public String toString() {
+      return "TransportSettings{" + "parallelDownloads=" + parallelDownloads + ", shareConnections=" + shareConnections +
+         ", connectTimeout=" + connectTimeout + ", readTimeout=" + readTimeout + ", retries=" + retries +
+         ", retryBackoff=" + retryBackoff + '}';
+   }
+}
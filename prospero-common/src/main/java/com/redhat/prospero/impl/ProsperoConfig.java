@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.impl;
+
+import java.util.Optional;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+/**
+ * Reads prospero settings through MicroProfile Config, the same source the CLI uses. Where no Config implementation
+ * is available - e.g. when the Galleon plugin runs inside a plain Maven build - system properties are used instead.
+ */
+public final class ProsperoConfig {
+
+   private ProsperoConfig() {
+   }
+
+   public static Optional<String> getValue(String name) {
+      try {
+         return ConfigProvider.getConfig().getOptionalValue(name, String.class);
+      } catch (IllegalStateException | NoClassDefFoundError e) {
+         return Optional.ofNullable(System.getProperty(name));
+      }
+   }
+
+   public static boolean getBoolean(String name, boolean defaultValue) {
+      return getValue(name).map(Boolean::parseBoolean).orElse(defaultValue);
+   }
+
+   public static int getInt(String name, int defaultValue) {
+      return getValue(name).map(Integer::parseInt).orElse(defaultValue);
+   }
+
+   public static long getLong(String name, long defaultValue) {
+      return getValue(name).map(Long::parseLong).orElse(defaultValue);
+   }
+}
@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.impl.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary diff between two versions of an artifact file, made of ranges copied from the old file and inserted literal
+ * bytes. Both files are identified by size and SHA-256 in the header, so a delta is only applied to the exact file it
+ * was created from, and the rebuilt file is verified before it replaces anything.
+ *
+ * Channels publish deltas next to the target version, with classifier {@code delta-<old version>} (prefixed by the
+ * artifact's own classifier, if any) and extension {@code <packaging>.delta}.
+ */
+public final class BinaryDelta {
+
+   private static final int MAGIC = 0x50525344; // PRSD
+   private static final int FORMAT_VERSION = 1;
+   private static final int BLOCK_SIZE = 1024;
+   private static final int OP_END = 0;
+   private static final int OP_COPY = 1;
+   private static final int OP_INSERT = 2;
+
+   private BinaryDelta() {
+   }
+
+   public static String classifier(String artifactClassifier, String fromVersion) {
+      final String delta = "delta-" + fromVersion;
+      return artifactClassifier == null || artifactClassifier.isEmpty() ? delta : artifactClassifier + "-" + delta;
+   }
+
+   public static String extension(String packaging) {
+      return packaging + ".delta";
+   }
+
+   /**
+    * Writes the delta turning {@code source} into {@code target}.
+    */
+   public static void diff(Path source, Path target, OutputStream out) throws IOException {
+      final byte[] from = Files.readAllBytes(source);
+      final byte[] to = Files.readAllBytes(target);
+
+      // index the old file by blocks
+      final Map<Integer, List<Integer>> blocks = new HashMap<>();
+      for (int offset = 0; offset + BLOCK_SIZE <= from.length; offset += BLOCK_SIZE) {
+         blocks.computeIfAbsent(hash(from, offset), h -> new ArrayList<>(1)).add(offset);
+      }
+
+      final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+      writeHeader(data, from, to);
+      final ByteArrayOutputStream literal = new ByteArrayOutputStream();
+      int position = 0;
+      int hash = to.length >= BLOCK_SIZE ? hash(to, 0) : 0;
+      while (position < to.length) {
+         int matchOffset = -1;
+         if (position + BLOCK_SIZE <= to.length) {
+            final List<Integer> candidates = blocks.get(hash);
+            if (candidates != null) {
+               for (int candidate : candidates) {
+                  if (regionMatches(from, candidate, to, position, BLOCK_SIZE)) {
+                     matchOffset = candidate;
+                     break;
+                  }
+               }
+            }
+         }
+
+         if (matchOffset < 0) {
+            literal.write(to[position]);
+            if (position + BLOCK_SIZE < to.length) {
+               hash = roll(hash, to[position], to[position + BLOCK_SIZE]);
+            }
+            position++;
+            continue;
+         }
+
+         // extend the match past the block as far as the files agree
+         int length = BLOCK_SIZE;
+         while (matchOffset + length < from.length && position + length < to.length && from[matchOffset + length] == to[position + length]) {
+            length++;
+         }
+         writeInsert(data, literal);
+         data.writeByte(OP_COPY);
+         data.writeInt(matchOffset);
+         data.writeInt(length);
+         position += length;
+         if (position + BLOCK_SIZE <= to.length) {
+            hash = hash(to, position);
+         }
+      }
+      writeInsert(data, literal);
+      data.writeByte(OP_END);
+      data.flush();
+   }
+
+   /**
+    * Rebuilds the new file from {@code source} and the delta, and moves it to {@code target} once its size and
+    * checksum are verified.
+    *
+    * @throws IOException if the delta doesn't belong to {@code source} or the result doesn't match the expected file
+    */
+   public static void apply(Path source, InputStream delta, Path target) throws IOException {
+      final byte[] from = Files.readAllBytes(source);
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(delta));
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+         throw new IOException("Unsupported delta format");
+      }
+      final long sourceSize = in.readLong();
+      final byte[] sourceDigest = readDigest(in);
+      if (sourceSize != from.length || !Arrays.equals(sourceDigest, sha256().digest(from))) {
+         throw new IOException("Delta was not created from " + source);
+      }
+      final long targetSize = in.readLong();
+      final byte[] targetDigest = readDigest(in);
+
+      Files.createDirectories(target.toAbsolutePath().getParent());
+      final Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+      try {
+         final MessageDigest digest = sha256();
+         long written = 0;
+         try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), digest)) {
+            final byte[] buffer = new byte[64 * 1024];
+            int op;
+            while ((op = in.readByte()) != OP_END) {
+               if (op == OP_COPY) {
+                  final int offset = in.readInt();
+                  final int length = in.readInt();
+                  if (offset < 0 || length < 0 || (long) offset + length > from.length) {
+                     throw new IOException("Corrupted delta, copy outside of the source file");
+                  }
+                  out.write(from, offset, length);
+                  written += length;
+               } else if (op == OP_INSERT) {
+                  int remaining = in.readInt();
+                  if (remaining < 0) {
+                     throw new IOException("Corrupted delta, negative insert length");
+                  }
+                  written += remaining;
+                  while (remaining > 0) {
+                     final int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                     if (read < 0) {
+                        throw new IOException("Corrupted delta, unexpected end of data");
+                     }
+                     out.write(buffer, 0, read);
+                     remaining -= read;
+                  }
+               } else {
+                  throw new IOException("Corrupted delta, unknown operation " + op);
+               }
+            }
+         }
+         if (written != targetSize || !Arrays.equals(targetDigest, digest.digest())) {
+            throw new IOException("Checksum of the file rebuilt from delta doesn't match");
+         }
+         Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+         Files.deleteIfExists(tmp);
+      }
+   }
+
+   private static void writeHeader(DataOutputStream data, byte[] from, byte[] to) throws IOException {
+      data.writeInt(MAGIC);
+      data.writeInt(FORMAT_VERSION);
+      data.writeLong(from.length);
+      data.write(sha256().digest(from));
+      data.writeLong(to.length);
+      data.write(sha256().digest(to));
+   }
+
+   private static byte[] readDigest(DataInputStream in) throws IOException {
+      final byte[] digest = new byte[32];
+      in.readFully(digest);
+      return digest;
+   }
+
+   private static void writeInsert(DataOutputStream data, ByteArrayOutputStream literal) throws IOException {
+      if (literal.size() == 0) {
+         return;
+      }
+      data.writeByte(OP_INSERT);
+      data.writeInt(literal.size());
+      literal.writeTo(data);
+      literal.reset();
+   }
+
+   private static boolean regionMatches(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+      for (int i = 0; i < length; i++) {
+         if (a[aOffset + i] != b[bOffset + i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   // rolling checksum in the style of rsync: low half is the sum of bytes, high half the sum of those sums
+   private static int hash(byte[] data, int offset) {
+      int a = 0;
+      int b = 0;
+      for (int i = 0; i < BLOCK_SIZE; i++) {
+         a += data[offset + i] & 0xff;
+         b += (BLOCK_SIZE - i) * (data[offset + i] & 0xff);
+      }
+      return (b << 16) | (a & 0xffff);
+   }
+
+   private static int roll(int hash, byte out, byte in) {
+      int a = hash & 0xffff;
+      int b = hash >>> 16;
+      a = (a - (out & 0xff) + (in & 0xff)) & 0xffff;
+      b = (b - BLOCK_SIZE * (out & 0xff) + a) & 0xffff;
+      return (b << 16) | a;
+   }
+
+   private static MessageDigest sha256() {
+      try {
+         return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.impl.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.prospero.api.Channel;
+import com.redhat.prospero.impl.ProsperoConfig;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferEvent;
+
+/**
+ * Tracks latency and errors of channel repositories from Aether transfer events, and orders mirrors accordingly.
+ *
+ * Only channels sharing a {@link Channel#getMirrorGroup() mirror group} serve the same content, so only those are
+ * reordered - fastest first - and a mirror failing {@code prospero.channels.failure-threshold} times in a row is skipped
+ * for {@code prospero.channels.cooldown-seconds}, as long as another mirror of its group is available.
+ */
+public class ChannelHealth extends AbstractTransferListener {
+
+   public static final String ENABLED_PROPERTY = "prospero.channels.latency-ordering";
+   public static final String FAILURE_THRESHOLD_PROPERTY = "prospero.channels.failure-threshold";
+   public static final String COOLDOWN_PROPERTY = "prospero.channels.cooldown-seconds";
+
+   // weight of the newest sample in the moving average
+   private static final double ALPHA = 0.3;
+
+   private final int failureThreshold;
+   private final long cooldown;
+   private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+   public ChannelHealth(int failureThreshold, long cooldownSeconds) {
+      this.failureThreshold = failureThreshold;
+      this.cooldown = TimeUnit.SECONDS.toMillis(cooldownSeconds);
+   }
+
+   /**
+    * @return tracker configured through MicroProfile Config, or {@code null} if latency ordering is not enabled
+    */
+   public static ChannelHealth fromConfig() {
+      if (!ProsperoConfig.getBoolean(ENABLED_PROPERTY, false)) {
+         return null;
+      }
+      return new ChannelHealth(ProsperoConfig.getInt(FAILURE_THRESHOLD_PROPERTY, 3), ProsperoConfig.getLong(COOLDOWN_PROPERTY, 300));
+   }
+
+   @Override
+   public void transferStarted(TransferEvent event) {
+      final long latency = System.currentTimeMillis() - event.getResource().getTransferStartTime();
+      stats(event).recordLatency(latency);
+   }
+
+   @Override
+   public void transferSucceeded(TransferEvent event) {
+      stats(event).recordSuccess();
+   }
+
+   @Override
+   public void transferFailed(TransferEvent event) {
+      final Exception exception = event.getException();
+      if (exception instanceof ArtifactNotFoundException || exception instanceof MetadataNotFoundException) {
+         // the mirror answered, it just doesn't have the file
+         stats(event).recordSuccess();
+      } else {
+         stats(event).recordFailure(failureThreshold, cooldown);
+      }
+   }
+
+   /**
+    * Orders mirrors within each mirror group fastest first and drops mirrors that are cooling down. Groups keep the
+    * position of their first declared channel; channels without a group are never moved or dropped.
+    */
+   public List<RemoteRepository> order(List<RemoteRepository> repositories, List<Channel> channels) {
+      final long now = System.currentTimeMillis();
+      final Map<String, List<RemoteRepository>> groups = new LinkedHashMap<>();
+      for (int i = 0; i < repositories.size(); i++) {
+         final String group = channels.get(i).getMirrorGroup();
+         final String groupKey = group == null ? "\u0000" + i : group;
+         groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(repositories.get(i));
+      }
+
+      final List<RemoteRepository> ordered = new ArrayList<>(repositories.size());
+      for (List<RemoteRepository> members : groups.values()) {
+         if (members.size() == 1) {
+            ordered.addAll(members);
+            continue;
+         }
+         final List<RemoteRepository> available = new ArrayList<>(members.size());
+         for (RemoteRepository member : members) {
+            if (!stats(member.getUrl()).isCoolingDown(now)) {
+               available.add(member);
+            }
+         }
+         final List<RemoteRepository> candidates = available.isEmpty() ? new ArrayList<>(members) : available;
+         candidates.sort(Comparator.comparingDouble(r -> stats(r.getUrl()).latency));
+         ordered.addAll(candidates);
+      }
+      return ordered;
+   }
+
+   @Override
+   public String toString() {
+      return "ChannelHealth" + stats;
+   }
+
+   private Stats stats(TransferEvent event) {
+      return stats(event.getResource().getRepositoryUrl());
+   }
+
+   private Stats stats(String url) {
+      return stats.computeIfAbsent(normalize(url), u -> new Stats());
+   }
+
+   private static String normalize(String url) {
+      return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+   }
+
+   private static class Stats {
+      // unknown mirrors sort first, so that each gets measured
+      private volatile double latency = 0;
+      private int consecutiveFailures;
+      private volatile long coolingDownUntil;
+
+      synchronized void recordLatency(long sample) {
+         latency = latency == 0 ? sample : ALPHA * sample + (1 - ALPHA) * latency;
+      }
+
+      synchronized void recordSuccess() {
+         consecutiveFailures = 0;
+      }
+
+      synchronized void recordFailure(int threshold, long cooldown) {
+         if (++consecutiveFailures >= threshold) {
+            coolingDownUntil = System.currentTimeMillis() + cooldown;
+            consecutiveFailures = 0;
+         }
+      }
+
+      boolean isCoolingDown(long now) {
+         return coolingDownUntil > now;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("{latency=%.0fms, coolingDown=%s}", latency, isCoolingDown(System.currentTimeMillis()));
+      }
+   }
+}
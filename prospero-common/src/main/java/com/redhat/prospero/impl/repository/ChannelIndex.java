@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.impl.repository;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.redhat.prospero.api.Channel;
+import com.redhat.prospero.api.ComparableVersions;
+import com.redhat.prospero.impl.ProsperoConfig;
+
+/**
+ * Compact list of all versions available in a channel, keyed by {@code groupId:artifactId}.
+ *
+ * A channel publishes its index as {@value #INDEX_FILE} in the repository root. With {@code prospero.channels.index}
+ * set to {@code prefer}, the index is downloaded at most once per {@code prospero.channels.index.ttl-seconds} and
+ * version queries are answered from it instead of one metadata request per artifact. With {@code offline}, only the
+ * indexes already stored in the local cache are used and the channels are never contacted - a channel without a stored
+ * index is an error then. The index is downloaded through the repository system, like any other repository metadata,
+ * so the channel's authentication, proxy and transport settings apply.
+ */
+public class ChannelIndex {
+
+   public static final String MODE_PROPERTY = "prospero.channels.index";
+   public static final String TTL_PROPERTY = "prospero.channels.index.ttl-seconds";
+   public static final long DEFAULT_TTL_SECONDS = 86400;
+   public static final String INDEX_FILE = "prospero-index.gz";
+
+   private static final String HEADER = "# prospero channel index v1";
+
+   public enum Mode {
+      OFF, PREFER, OFFLINE;
+
+      public static Mode fromConfig() {
+         return Mode.valueOf(ProsperoConfig.getValue(MODE_PROPERTY).orElse("off").toUpperCase());
+      }
+   }
+
+   /**
+    * Downloads the {@value #INDEX_FILE} published by a channel.
+    */
+   public interface Fetcher {
+      /**
+       * @return the downloaded index file
+       * @throws IOException if the channel can't be reached or doesn't publish an index
+       */
+      Path fetch(Channel channel) throws IOException;
+   }
+
+   // versions sorted from lowest to highest
+   private final Map<String, List<String>> versions;
+
+   private ChannelIndex(Map<String, List<String>> versions) {
+      this.versions = versions;
+   }
+
+   /**
+    * @return the highest version of the artifact that is equal to or above {@code minVersion}, or {@code null} if there is none
+    */
+   public String findHighestVersion(String groupId, String artifactId, String minVersion) {
+      final List<String> available = versions.get(groupId + ":" + artifactId);
+      if (available == null || available.isEmpty()) {
+         return null;
+      }
+      final String highest = available.get(available.size() - 1);
+      return ComparableVersions.compare(highest, minVersion) >= 0 ? highest : null;
+   }
+
+   public int size() {
+      return versions.size();
+   }
+
+   /**
+    * Builds the index of a repository in a local directory, using the standard maven layout
+    * {@code groupId/artifactId/version/artifactId-version[-classifier].extension}.
+    */
+   public static ChannelIndex scan(Path repositoryRoot) throws IOException {
+      final Map<String, TreeSet<String>> found = new TreeMap<>();
+      try (Stream<Path> files = Files.walk(repositoryRoot)) {
+         files.filter(Files::isRegularFile).forEach(file -> {
+            final Path versionDir = file.getParent();
+            final Path artifactDir = versionDir == null ? null : versionDir.getParent();
+            final Path groupDir = artifactDir == null ? null : artifactDir.getParent();
+            if (groupDir == null || !groupDir.startsWith(repositoryRoot) || groupDir.equals(repositoryRoot)) {
+               return;
+            }
+            final String version = versionDir.getFileName().toString();
+            final String artifactId = artifactDir.getFileName().toString();
+            if (!file.getFileName().toString().startsWith(artifactId + "-" + version)) {
+               return;
+            }
+            final String groupId = repositoryRoot.relativize(groupDir).toString().replace(groupDir.getFileSystem().getSeparator(), ".");
+            found.computeIfAbsent(groupId + ":" + artifactId, k -> new TreeSet<>(ComparableVersions::compare)).add(version);
+         });
+      }
+
+      final Map<String, List<String>> versions = new TreeMap<>();
+      found.forEach((ga, v) -> versions.put(ga, new ArrayList<>(v)));
+      return new ChannelIndex(versions);
+   }
+
+   public static ChannelIndex read(Path file) throws IOException {
+      try (InputStream in = Files.newInputStream(file)) {
+         return read(in);
+      }
+   }
+
+   private static ChannelIndex read(InputStream in) throws IOException {
+      final Map<String, List<String>> versions = new TreeMap<>();
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8))) {
+         final String header = reader.readLine();
+         if (!HEADER.equals(header)) {
+            throw new IOException("Unsupported channel index format: " + header);
+         }
+         String line;
+         while ((line = reader.readLine()) != null) {
+            final int tab = line.indexOf('\t');
+            if (line.isEmpty() || line.startsWith("#") || tab < 0) {
+               continue;
+            }
+            final List<String> available = new ArrayList<>();
+            Collections.addAll(available, line.substring(tab + 1).split(","));
+            available.sort(ComparableVersions::compare);
+            versions.put(line.substring(0, tab), available);
+         }
+      }
+      return new ChannelIndex(versions);
+   }
+
+   public void write(Path file) throws IOException {
+      final Path dir = file.toAbsolutePath().getParent();
+      Files.createDirectories(dir);
+      final Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+         writer.write(HEADER);
+         writer.write('\n');
+         for (Map.Entry<String, List<String>> entry : versions.entrySet()) {
+            writer.write(entry.getKey());
+            writer.write('\t');
+            writer.write(String.join(",", entry.getValue()));
+            writer.write('\n');
+         }
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   /**
+    * Loads the index of {@code channel}, downloading a new copy into {@code cache} if the stored one is older than the
+    * TTL. A stale copy is still used when the channel can't be reached.
+    *
+    * @return the index or {@code null} if the channel doesn't publish one and none is stored
+    * @throws IllegalStateException in offline mode, if no index of the channel is stored
+    */
+   public static ChannelIndex load(Channel channel, LocalArtifactCache cache, Mode mode, Fetcher fetcher) {
+      final Path localFile = cache.getRoot().resolve(".prospero-index-" + channel.getName().replaceAll("[^A-Za-z0-9._-]", "_") + ".gz");
+      final long ttl = TimeUnit.SECONDS.toMillis(ProsperoConfig.getLong(TTL_PROPERTY, DEFAULT_TTL_SECONDS));
+      final boolean stored = Files.exists(localFile);
+      if (mode == Mode.OFFLINE && !stored) {
+         // without an index every query would report "no update"
+         throw new IllegalStateException(String.format("No index of channel %s is stored in %s. Run once with %s=prefer while "
+                                                       + "the channel is reachable, or disable offline mode.",
+                                                       channel.getName(), cache.getRoot(), MODE_PROPERTY));
+      }
+      try {
+         if (mode == Mode.OFFLINE || (stored && System.currentTimeMillis() - Files.getLastModifiedTime(localFile).toMillis() <= ttl)) {
+            return read(localFile);
+         }
+
+         try {
+            final ChannelIndex index = read(fetcher.fetch(channel));
+            if (!cache.isReadOnly()) {
+               index.write(localFile);
+            }
+            return index;
+         } catch (IOException e) {
+            if (!stored) {
+               System.out.println("Channel " + channel.getName() + " has no index: " + e.getMessage());
+               return null;
+            }
+            System.out.println("Unable to refresh index of channel " + channel.getName() + ", using the stored copy: " + e.getMessage());
+            return read(localFile);
+         }
+      } catch (IOException e) {
+         if (mode == Mode.OFFLINE) {
+            throw new IllegalStateException("Unable to read the stored index of channel " + channel.getName() + ": " + e.getMessage(), e);
+         }
+         System.out.println("Unable to read index of channel " + channel.getName() + ": " + e.getMessage());
+         return null;
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "ChannelIndex{" + "artifacts=" + versions.size() + '}';
+   }
+}
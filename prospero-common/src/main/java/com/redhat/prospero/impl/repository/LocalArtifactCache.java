@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.impl.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.redhat.prospero.impl.ProsperoConfig;
+
+/**
+ * Persistent local Maven repository shared between prospero runs.
+ *
+ * The cache lives in {@code ~/.prospero/cache} unless {@code prospero.cache.dir} points elsewhere (host-wide), or
+ * {@code prospero.cache.per-installation} asks for a cache inside the installation. Its size is capped by
+ * {@code prospero.cache.max-size-mb}; when the cache is opened, the least recently used artifact versions are
+ * evicted until it fits. Settings are read through MicroProfile Config.
+ *
+ * Several processes can share one cache. Every process holds a shared lock on {@code .prospero-cache.lock} while it
+ * uses the cache, and eviction needs the exclusive lock, so it only runs when no other process has the cache open.
+ * As a last safeguard - e.g. for a tool resolving from the same directory without taking the lock - versions used
+ * within the last {@code prospero.cache.eviction-grace-minutes} (10 by default) are never evicted.
+ *
+ * A {@link #readOnly()} view never evicts, locks or records use, and prospero components given such a view don't store
+ * anything in it. Aether itself may still store repository metadata it downloads ({@code maven-metadata-*.xml},
+ * channel indexes, {@code resolver-status.properties}) in the cache directory.
+ */
+public class LocalArtifactCache {
+
+   public static final String CACHE_DIR_PROPERTY = "prospero.cache.dir";
+   public static final String PER_INSTALLATION_PROPERTY = "prospero.cache.per-installation";
+   public static final String MAX_SIZE_PROPERTY = "prospero.cache.max-size-mb";
+   public static final long DEFAULT_MAX_SIZE_MB = 4096;
+   public static final String EVICTION_GRACE_PROPERTY = "prospero.cache.eviction-grace-minutes";
+   public static final long DEFAULT_EVICTION_GRACE_MINUTES = 10;
+
+   private static final String LOCK_FILE = ".prospero-cache.lock";
+   private static final String VERSION_METADATA_FILE = ".prospero-versions.properties";
+   private static final String USED_MARKER = ".prospero-used";
+   // shared locks held by this JVM on the caches it opened, released when the JVM exits
+   private static final Map<Path, FileChannel> OPENED = new ConcurrentHashMap<>();
+
+   private final Path root;
+   private final long maxSize;
+   private final long evictionGrace;
+   private final boolean readOnly;
+
+   public LocalArtifactCache(Path root, long maxSize) {
+      this(root, maxSize, DEFAULT_EVICTION_GRACE_MINUTES);
+   }
+
+   public LocalArtifactCache(Path root, long maxSize, long evictionGraceMinutes) {
+      this(root, maxSize, TimeUnit.MINUTES.toMillis(evictionGraceMinutes), false);
+   }
+
+   private LocalArtifactCache(Path root, long maxSize, long evictionGrace, boolean readOnly) {
+      this.root = root.toAbsolutePath();
+      this.maxSize = maxSize;
+      this.evictionGrace = evictionGrace;
+      this.readOnly = readOnly;
+   }
+
+   /**
+    * @return view of the same cache for operations that must not change it, such as planning an update
+    */
+   public LocalArtifactCache readOnly() {
+      return readOnly ? this : new LocalArtifactCache(root, maxSize, evictionGrace, true);
+   }
+
+   public boolean isReadOnly() {
+      return readOnly;
+   }
+
+   public static LocalArtifactCache defaultCache() {
+      return forInstallation(null);
+   }
+
+   public static LocalArtifactCache forInstallation(Path installation) {
+      final Path root;
+      final Optional<String> cacheDir = ProsperoConfig.getValue(CACHE_DIR_PROPERTY);
+      if (cacheDir.isPresent()) {
+         root = Paths.get(cacheDir.get());
+      } else if (installation != null && ProsperoConfig.getBoolean(PER_INSTALLATION_PROPERTY, false)) {
+         root = installation.resolve(".prospero").resolve("cache");
+      } else {
+         root = Paths.get(System.getProperty("user.home"), ".prospero", "cache");
+      }
+      final long maxSizeMb = ProsperoConfig.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE_MB);
+      return new LocalArtifactCache(root, maxSizeMb * 1024 * 1024,
+                                    ProsperoConfig.getLong(EVICTION_GRACE_PROPERTY, DEFAULT_EVICTION_GRACE_MINUTES));
+   }
+
+   public Path getRoot() {
+      return root;
+   }
+
+   public Path getVersionMetadataFile() {
+      return root.resolve(VERSION_METADATA_FILE);
+   }
+
+   public long getMaxSize() {
+      return maxSize;
+   }
+
+   /**
+    * Creates the cache directory if needed. The first time a cache directory is opened in this JVM, evicts least
+    * recently used entries above the size limit - unless another process is using the cache - and then takes a shared
+    * lock on the cache for the rest of the JVM's life.
+    */
+   public Path open() throws IOException {
+      if (readOnly) {
+         return root;
+      }
+      Files.createDirectories(root);
+      if (!OPENED.containsKey(root)) {
+         synchronized (OPENED) {
+            if (!OPENED.containsKey(root)) {
+               // a shared lock needs a readable channel, the exclusive eviction lock a writable one
+               final FileChannel channel = FileChannel.open(root.resolve(LOCK_FILE), StandardOpenOption.READ,
+                                                            StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+               try {
+                  evictIfUnused(channel);
+                  // blocks while another process is evicting
+                  channel.lock(0, Long.MAX_VALUE, true);
+               } catch (IOException | RuntimeException e) {
+                  channel.close();
+                  throw e;
+               }
+               OPENED.put(root, channel);
+            }
+         }
+      }
+      return root;
+   }
+
+   /**
+    * Marks a cached file as recently used so that LRU eviction keeps it. The use is recorded on a marker file in the
+    * file's directory rather than on the file itself: installations may hard link cached artifacts, and changing the
+    * modification time of the cached file would change it on the installed jar as well.
+    */
+   public void touch(File file) {
+      if (readOnly || file == null || !file.toPath().startsWith(root)) {
+         return;
+      }
+      final Path marker = file.toPath().resolveSibling(USED_MARKER);
+      try {
+         if (!Files.exists(marker)) {
+            try {
+               Files.createFile(marker);
+            } catch (FileAlreadyExistsException e) {
+               // created concurrently
+            }
+         }
+         Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+      } catch (IOException e) {
+         // the entry is evicted earlier than it could be, nothing else depends on the marker
+      }
+   }
+
+   private void evictIfUnused(FileChannel lockChannel) throws IOException {
+      if (maxSize <= 0) {
+         return;
+      }
+
+      try (FileLock lock = lockChannel.tryLock()) {
+         if (lock == null) {
+            // other processes hold the cache open, their files must not disappear
+            return;
+         }
+
+         final List<Entry> entries = listEntries();
+         long total = entries.stream().mapToLong(e -> e.size).sum();
+         if (total <= maxSize) {
+            return;
+         }
+
+         final long graceLimit = System.currentTimeMillis() - evictionGrace;
+         entries.sort(Comparator.comparingLong(e -> e.lastUsed));
+         for (Entry entry : entries) {
+            if (total <= maxSize || entry.lastUsed > graceLimit) {
+               break;
+            }
+            delete(entry.dir);
+            total -= entry.size;
+         }
+      }
+   }
+
+   // removes the files of a single entry, leaving nested version directories of other entries alone
+   private static void delete(Path dir) throws IOException {
+      try (Stream<Path> files = Files.list(dir)) {
+         for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+            Files.deleteIfExists(file);
+         }
+      }
+      try (Stream<Path> remaining = Files.list(dir)) {
+         if (!remaining.findAny().isPresent()) {
+            Files.deleteIfExists(dir);
+         }
+      }
+   }
+
+   // an entry is the set of files in one directory, usually a single artifact version (groupId/artifactId/version)
+   private List<Entry> listEntries() throws IOException {
+      final List<Path> versionDirs;
+      try (Stream<Path> files = Files.walk(root)) {
+         versionDirs = files.filter(Files::isRegularFile)
+            // files directly in the root (lock, metadata index) are bookkeeping, not cached artifacts
+            .filter(p -> !p.getParent().equals(root))
+            .map(Path::getParent)
+            .distinct()
+            .collect(Collectors.toList());
+      }
+
+      final List<Entry> entries = new ArrayList<>(versionDirs.size());
+      for (Path dir : versionDirs) {
+         long size = 0;
+         long lastUsed = 0;
+         try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+               size += Files.size(file);
+               final FileTime modified = Files.getLastModifiedTime(file);
+               lastUsed = Math.max(lastUsed, modified.toMillis());
+            }
+         }
+         entries.add(new Entry(dir, size, lastUsed));
+      }
+      return entries;
+   }
+
+   private static class Entry {
+      private final Path dir;
+      private final long size;
+      private final long lastUsed;
+
+      Entry(Path dir, long size, long lastUsed) {
+         this.dir = dir;
+         this.size = size;
+         this.lastUsed = lastUsed;
+      }
+   }
+}
@@ -19,61 +19,102 @@ package com.redhat.prospero.impl.repository;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import com.redhat.prospero.api.ArtifactDependencies;
 import com.redhat.prospero.api.ArtifactNotFoundException;
 import com.redhat.prospero.api.Channel;
+import com.redhat.prospero.api.ComparableVersions;
 import com.redhat.prospero.api.Gav;
 import com.redhat.prospero.api.Repository;
+import com.redhat.prospero.api.TransportSettings;
+import com.redhat.prospero.impl.ProsperoConfig;
 import com.redhat.prospero.xml.XmlException;
-import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
-import org.eclipse.aether.impl.DefaultServiceLocator;
-import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.MetadataResult;
 import org.eclipse.aether.resolution.VersionRangeRequest;
 import org.eclipse.aether.resolution.VersionRangeResolutionException;
 import org.eclipse.aether.resolution.VersionRangeResult;
-import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
-import org.eclipse.aether.spi.connector.transport.TransporterFactory;
-import org.eclipse.aether.transport.file.FileTransporterFactory;
-import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.MetadataTransferException;
 import org.eclipse.aether.version.Version;
 import org.jboss.galleon.universe.maven.MavenUniverseException;
 
 public class MavenRepository implements Repository {
 
+   public static final String DELTA_PROPERTY = "prospero.delta";
+
+   private static final long DEFAULT_RETRY_BACKOFF = 1000;
+
    private final RepositorySystem repoSystem;
    private final RepositorySystemSession repoSession;
    private final List<Channel> channels;
+   private final LocalArtifactCache cache;
+   private final VersionMetadataCache versionCache;
+   private final String channelKey;
+   private final List<RemoteRepository> repositories;
+   private final ChannelHealth channelHealth;
+   private final int retries;
+   private final long retryBackoff;
+   private final ChannelIndex.Mode indexMode;
+   private volatile List<ChannelIndex> indexes;
+   private final boolean deltas;
 
    public MavenRepository(String channelName, String channelUrl) {
-      channels = new ArrayList<>();
-      channels.add(new Channel(channelName, channelUrl));
-      try {
-         repoSystem = newRepositorySystem();
-         repoSession = newRepositorySystemSession(repoSystem );
-      } catch (IOException e) {
-         throw new RuntimeException(e);
-      }
+      this(Collections.singletonList(new Channel(channelName, channelUrl)));
    }
 
    public MavenRepository(List<Channel> channels) {
+      this(channels, LocalArtifactCache.defaultCache());
+   }
+
+   public MavenRepository(List<Channel> channels, LocalArtifactCache cache) {
       this.channels = channels;
+      this.cache = cache;
+      this.versionCache = cache.isReadOnly() ? VersionMetadataCache.readOnly(cache) : VersionMetadataCache.forCache(cache);
+      this.channelKey = channels.stream().map(c -> c.getName() + "=" + c.getUrl()).collect(Collectors.joining(","));
+      this.repositories = Collections.unmodifiableList(channels.stream().map(c-> newRepository(c.getName(), c.getUrl())).collect(Collectors.toList()));
+      this.channelHealth = ChannelHealth.fromConfig();
+      this.retries = channels.stream().map(Channel::getTransport).filter(t -> t != null && t.getRetries() != null)
+         .mapToInt(TransportSettings::getRetries).max().orElse(0);
+      this.retryBackoff = channels.stream().map(Channel::getTransport).filter(t -> t != null && t.getRetryBackoff() != null)
+         .mapToLong(TransportSettings::getRetryBackoff).max().orElse(DEFAULT_RETRY_BACKOFF);
+      this.indexMode = ChannelIndex.Mode.fromConfig();
+      this.deltas = ProsperoConfig.getBoolean(DELTA_PROPERTY, false);
       try {
-         repoSystem = newRepositorySystem();
-         repoSession = newRepositorySystemSession(repoSystem );
+         repoSystem = RepositorySystemProvider.getRepositorySystem();
+         final DefaultRepositorySystemSession session = RepositorySystemProvider.newSession(cache, channels);
+         if (channelHealth != null) {
+            session.setTransferListener(channelHealth);
+         }
+         if (indexMode == ChannelIndex.Mode.OFFLINE) {
+            // artifacts can only come from the local cache
+            session.setOffline(true);
+         }
+         repoSession = session;
       } catch (IOException e) {
          throw new RuntimeException(e);
       }
@@ -85,29 +126,100 @@ public class MavenRepository implements Repository {
       req.setArtifact(new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getPackaging(), artifact.getVersion()));
       req.setRepositories(newRepositories());
       try {
-         final ArtifactResult result = repoSystem.resolveArtifact(repoSession, req);
+         final ArtifactResult result = resolveWithRetries(req);
          if (!result.isResolved()) {
             throw new ArtifactNotFoundException("Failed to resolve " +req.getArtifact().toString());
          }
          if (result.isMissing()) {
             throw new ArtifactNotFoundException("Repository is missing artifact " + req.getArtifact().toString());
          }
-         return result.getArtifact().getFile();
+         final File file = result.getArtifact().getFile();
+         cache.touch(file);
+         return file;
       } catch (ArtifactResolutionException e) {
          throw new ArtifactNotFoundException("Unable to find artifact [" + artifact + "]", e);
       }
    }
 
+   /**
+    * With {@code prospero.delta} enabled, looks for a {@link BinaryDelta} from the installed version published in the
+    * channels and rebuilds the new file from it. Falls back to downloading the full artifact if there is no delta, or
+    * if it can't be applied to the installed file.
+    */
+   @Override
+   public File resolveUpdate(Gav installed, File installedFile, Gav target) throws ArtifactNotFoundException {
+      if (deltas && installedFile != null && installedFile.isFile()) {
+         final File rebuilt = resolveFromDelta(installed, installedFile, target);
+         if (rebuilt != null) {
+            cache.touch(rebuilt);
+            return rebuilt;
+         }
+      }
+      return resolve(target);
+   }
+
+   private File resolveFromDelta(Gav installed, File installedFile, Gav target) {
+      final DefaultArtifact targetArtifact = new DefaultArtifact(target.getGroupId(), target.getArtifactId(), target.getClassifier(),
+                                                                 target.getPackaging(), target.getVersion());
+      final LocalRepositoryManager localRepository = repoSession.getLocalRepositoryManager();
+      if (localRepository.find(repoSession, new LocalArtifactRequest(targetArtifact, null, null)).isAvailable()) {
+         // already in the cache, nothing to download
+         return null;
+      }
+
+      final ArtifactRequest req = new ArtifactRequest();
+      req.setArtifact(new DefaultArtifact(target.getGroupId(), target.getArtifactId(),
+                                          BinaryDelta.classifier(target.getClassifier(), installed.getVersion()),
+                                          BinaryDelta.extension(target.getPackaging()), target.getVersion()));
+      req.setRepositories(newRepositories());
+      final File deltaFile;
+      try {
+         deltaFile = resolveWithRetries(req).getArtifact().getFile();
+      } catch (ArtifactResolutionException e) {
+         // the channel doesn't publish this delta
+         return null;
+      }
+
+      final Path targetFile = localRepository.getRepository().getBasedir().toPath().resolve(localRepository.getPathForLocalArtifact(targetArtifact));
+      try (InputStream in = Files.newInputStream(deltaFile.toPath())) {
+         BinaryDelta.apply(installedFile.toPath(), in, targetFile);
+      } catch (IOException e) {
+         System.out.println("Unable to apply delta of " + target + ", downloading the full artifact: " + e.getMessage());
+         return null;
+      }
+      // record the rebuilt file so that later lookups find it in the cache
+      localRepository.add(repoSession, new LocalArtifactRegistration(targetArtifact.setFile(targetFile.toFile())));
+      return targetFile.toFile();
+   }
+
    @Override
    public Gav findLatestVersionOf(Gav artifact) {
+      final List<ChannelIndex> indexes = getIndexes();
+      if (indexes != null) {
+         return findLatestVersionInIndexes(indexes, artifact);
+      }
+
+      final VersionMetadataCache.Lookup cached = versionCache.get(channelKey, artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+      if (cached != null) {
+         return cached.getHighestVersion() == null ? artifact : artifact.newVersion(cached.getHighestVersion());
+      }
+
       VersionRangeRequest req = new VersionRangeRequest();
       final DefaultArtifact artifact1 = new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getPackaging(), "[" + artifact.getVersion() + ",)");
       req.setArtifact(artifact1);
       req.setRepositories(newRepositories());
 
       try {
-         final VersionRangeResult versionRangeResult = repoSystem.resolveVersionRange(repoSession, req);
+         VersionRangeResult versionRangeResult = repoSystem.resolveVersionRange(repoSession, req);
+         for (int attempt = 0; attempt < retries && hasTransferErrors(versionRangeResult) && backOff(attempt); attempt++) {
+            versionRangeResult = repoSystem.resolveVersionRange(repoSession, req);
+         }
          final Version highestVersion = versionRangeResult.getHighestVersion();
+         // don't remember an answer based on unreachable channels
+         if (!hasTransferErrors(versionRangeResult)) {
+            versionCache.put(channelKey, artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+                             highestVersion == null ? null : highestVersion.toString());
+         }
          if (highestVersion == null) {
             // TODO: fix the zip artifacts
 //            System.out.println("Artifact not found: [" + artifact + "]");
@@ -121,55 +233,152 @@ public class MavenRepository implements Repository {
       }
    }
 
+   /**
+    * Looks the artifact up in the local cache and otherwise asks the channels for its size, without downloading it.
+    */
    @Override
-   public ArtifactDependencies resolveDescriptor(Gav latestVersion) throws XmlException {
-      return null;
+   public long getDownloadSize(Gav artifact) {
+      final DefaultArtifact aetherArtifact = new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(),
+                                                                 artifact.getPackaging(), artifact.getVersion());
+      final LocalArtifactResult local = repoSession.getLocalRepositoryManager().find(repoSession, new LocalArtifactRequest(aetherArtifact, null, null));
+      if (local.isAvailable()) {
+         return 0;
+      }
+      if (repoSession.isOffline()) {
+         return -1;
+      }
+
+      final String path = artifact.getGroupId().replace('.', '/') + "/" + artifact.getArtifactId() + "/" + artifact.getVersion() + "/" + artifact.getFileName();
+      // resolution repositories carry the proxy and authentication the session selects for them
+      for (RemoteRepository repository : repoSystem.newResolutionRepositories(repoSession, newRepositories())) {
+         final String url = repository.getUrl().endsWith("/") ? repository.getUrl() : repository.getUrl() + "/";
+         final TransportSettings transport = channels.stream().filter(c -> c.getName().equals(repository.getId()))
+            .map(Channel::getTransport).filter(t -> t != null).findFirst().orElse(null);
+         try {
+            final URLConnection connection = RepositorySystemProvider.openConnection(repoSession, repository, url + path, transport);
+            if (connection instanceof HttpURLConnection) {
+               ((HttpURLConnection) connection).setRequestMethod("HEAD");
+               if (((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_OK) {
+                  continue;
+               }
+            }
+            final long size = connection.getContentLengthLong();
+            if (size >= 0) {
+               return size;
+            }
+         } catch (IOException e) {
+            // try the next channel
+         }
+      }
+      return -1;
    }
 
-   private static RepositorySystem newRepositorySystem()
-   {
-      /*
-       * Aether's components implement org.eclipse.aether.spi.locator.Service to ease manual wiring and using the
-       * prepopulated DefaultServiceLocator, we only need to register the repository connector and transporter
-       * factories.
-       */
-      DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
-      locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class );
-      locator.addService(TransporterFactory.class, FileTransporterFactory.class );
-      locator.addService( TransporterFactory.class, HttpTransporterFactory.class );
-
-      locator.setErrorHandler( new DefaultServiceLocator.ErrorHandler()
-      {
-         @Override
-         public void serviceCreationFailed( Class<?> type, Class<?> impl, Throwable exception )
-         {
-            System.out.println(String.format("Service creation failed for %s with implementation %s",
-                                             type, impl ));
-            exception.printStackTrace();
+   /**
+    * @return indexes of all channels, or {@code null} if version queries have to go to the channels
+    */
+   private List<ChannelIndex> getIndexes() {
+      if (indexMode == ChannelIndex.Mode.OFF) {
+         return null;
+      }
+      List<ChannelIndex> loaded = indexes;
+      if (loaded == null) {
+         synchronized (this) {
+            loaded = indexes;
+            if (loaded == null) {
+               loaded = new ArrayList<>(channels.size());
+               for (Channel channel : channels) {
+                  final ChannelIndex index = ChannelIndex.load(channel, cache, indexMode, this::fetchIndex);
+                  if (index != null) {
+                     loaded.add(index);
+                  } else if (indexMode == ChannelIndex.Mode.PREFER) {
+                     // an index is only authoritative if it covers every channel
+                     loaded = Collections.emptyList();
+                     break;
+                  }
+               }
+               indexes = loaded;
+            }
          }
-      } );
+      }
+      return loaded.isEmpty() && indexMode == ChannelIndex.Mode.PREFER ? null : loaded;
+   }
 
-      return locator.getService( RepositorySystem.class );
+   // the index is stored at the repository root, which is where metadata without groupId and artifactId is resolved from
+   private Path fetchIndex(Channel channel) throws IOException {
+      final RemoteRepository repository = repositories.stream().filter(r -> r.getId().equals(channel.getName())).findFirst()
+         .orElseThrow(() -> new IOException("Unknown channel " + channel.getName()));
+      final MetadataRequest request = new MetadataRequest(new DefaultMetadata(ChannelIndex.INDEX_FILE, Metadata.Nature.RELEASE), repository, null);
+      final MetadataResult result = repoSystem.resolveMetadata(repoSession, Collections.singletonList(request)).get(0);
+      if (!result.isResolved() || result.getMetadata().getFile() == null) {
+         final Exception cause = result.getException();
+         throw new IOException(cause == null ? ChannelIndex.INDEX_FILE + " not found" : cause.getMessage(), cause);
+      }
+      return result.getMetadata().getFile().toPath();
    }
 
-   private static DefaultRepositorySystemSession newRepositorySystemSession(RepositorySystem system ) throws IOException {
-      DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+   private static Gav findLatestVersionInIndexes(List<ChannelIndex> indexes, Gav artifact) {
+      String highest = null;
+      for (ChannelIndex index : indexes) {
+         final String version = index.findHighestVersion(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+         if (version != null && (highest == null || ComparableVersions.compare(version, highest) > 0)) {
+            highest = version;
+         }
+      }
+      return highest == null ? artifact : artifact.newVersion(highest);
+   }
+
+   private ArtifactResult resolveWithRetries(ArtifactRequest req) throws ArtifactResolutionException {
+      for (int attempt = 0; ; attempt++) {
+         try {
+            return repoSystem.resolveArtifact(repoSession, req);
+         } catch (ArtifactResolutionException e) {
+            if (attempt >= retries || !hasTransferErrors(e.getResults()) || !backOff(attempt)) {
+               throw e;
+            }
+         }
+      }
+   }
+
+   private static boolean hasTransferErrors(List<ArtifactResult> results) {
+      return results.stream().flatMap(r -> r.getExceptions().stream())
+         .anyMatch(e -> e instanceof ArtifactTransferException && !(e instanceof org.eclipse.aether.transfer.ArtifactNotFoundException));
+   }
 
-      org.eclipse.aether.repository.LocalRepository localRepo = new LocalRepository(Files.createTempDirectory("mvn-repo").toString() );
-      session.setLocalRepositoryManager( system.newLocalRepositoryManager( session, localRepo ) );
+   private static boolean hasTransferErrors(VersionRangeResult result) {
+      return result.getExceptions().stream()
+         .anyMatch(e -> e instanceof MetadataTransferException && !(e instanceof MetadataNotFoundException));
+   }
 
-      //      session.setTransferListener( new ConsoleTransferListener() );
-      //      session.setRepositoryListener( new ConsoleRepositoryListener() );
+   /**
+    * Waits before the next attempt, doubling the wait after each failed one.
+    *
+    * @return {@code false} if interrupted and no more attempts should be made
+    */
+   private boolean backOff(int attempt) {
+      try {
+         Thread.sleep(retryBackoff << Math.min(attempt, 16));
+         return true;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return false;
+      }
+   }
 
-      // uncomment to generate dirty trees
-      // session.setDependencyGraphTransformer( null );
+   public VersionMetadataCache getVersionMetadataCache() {
+      return versionCache;
+   }
 
-      return session;
+   @Override
+   public ArtifactDependencies resolveDescriptor(Gav latestVersion) throws XmlException {
+      return null;
    }
 
    public List<RemoteRepository> newRepositories()
    {
-      return channels.stream().map(c-> newRepository(c.getName(), c.getUrl())).collect(Collectors.toList());
+      if (channelHealth == null) {
+         return repositories;
+      }
+      return channelHealth.order(repositories, channels);
    }
 
    private RemoteRepository newRepository(String channel, String url)
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.impl.repository;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.prospero.api.Channel;
+import com.redhat.prospero.api.TransportSettings;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.repository.AuthenticationContext;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+
+/**
+ * Single, lazily built Aether {@link RepositorySystem} shared by all prospero components, together with the one session
+ * configuration they use. All sessions store artifacts in the persistent {@link LocalArtifactCache}, so the CLI and
+ * the Galleon plugin reuse each other's downloads.
+ */
+public final class RepositorySystemProvider {
+
+   // BasicRepositoryConnector - number of parallel transfers per repository
+   private static final String THREADS_PROPERTY = "aether.connector.basic.threads";
+   // HttpTransporter - keep the connection pool and authentication state for the session instead of per transporter
+   private static final String CACHE_STATE_PROPERTY = "aether.connector.http.cacheState";
+
+   private RepositorySystemProvider() {
+   }
+
+   private static class Holder {
+      private static final RepositorySystem REPOSITORY_SYSTEM = newRepositorySystem();
+   }
+
+   public static RepositorySystem getRepositorySystem() {
+      return Holder.REPOSITORY_SYSTEM;
+   }
+
+   public static DefaultRepositorySystemSession newSession() throws IOException {
+      return newSession(LocalArtifactCache.defaultCache());
+   }
+
+   public static DefaultRepositorySystemSession newSession(List<Channel> channels) throws IOException {
+      return newSession(LocalArtifactCache.defaultCache(), channels);
+   }
+
+   public static DefaultRepositorySystemSession newSession(LocalArtifactCache cache) throws IOException {
+      return newSession(cache, Collections.emptyList());
+   }
+
+   /**
+    * Creates a session storing artifacts in {@code cache}, with the {@link TransportSettings} of {@code channels} applied.
+    * Timeouts are set per repository - the repository id has to be the channel name, see {@link #repositoryId}.
+    * Aether only reads parallel downloads and connection sharing for the whole session, so the largest number of
+    * parallel downloads of any channel applies to every repository, and connections are shared if any channel asks for
+    * it. Repositories that are not channels get the largest timeouts configured for any channel.
+    */
+   public static DefaultRepositorySystemSession newSession(LocalArtifactCache cache, List<Channel> channels) throws IOException {
+      DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+
+      org.eclipse.aether.repository.LocalRepository localRepo = new LocalRepository(cache.open().toString() );
+      session.setLocalRepositoryManager( getRepositorySystem().newLocalRepositoryManager( session, localRepo ) );
+      // artifacts are reused from the persistent cache, but version metadata has to reflect the channel
+      session.setUpdatePolicy(RepositoryPolicy.UPDATE_POLICY_ALWAYS);
+      configureTransport(session, channels);
+
+      return session;
+   }
+
+   private static void configureTransport(DefaultRepositorySystemSession session, List<Channel> channels) {
+      int parallelDownloads = 0;
+      int connectTimeout = 0;
+      int readTimeout = 0;
+      Boolean shareConnections = null;
+      for (Channel channel : channels) {
+         final TransportSettings transport = channel.getTransport();
+         if (transport == null) {
+            continue;
+         }
+         if (transport.getConnectTimeout() != null) {
+            session.setConfigProperty(ConfigurationProperties.CONNECT_TIMEOUT + "." + channel.getName(), transport.getConnectTimeout());
+            connectTimeout = Math.max(connectTimeout, transport.getConnectTimeout());
+         }
+         if (transport.getReadTimeout() != null) {
+            session.setConfigProperty(ConfigurationProperties.REQUEST_TIMEOUT + "." + channel.getName(), transport.getReadTimeout());
+            readTimeout = Math.max(readTimeout, transport.getReadTimeout());
+         }
+         if (transport.getParallelDownloads() != null) {
+            parallelDownloads = Math.max(parallelDownloads, transport.getParallelDownloads());
+         }
+         if (transport.getShareConnections() != null) {
+            shareConnections = Boolean.TRUE.equals(shareConnections) || transport.getShareConnections();
+         }
+      }
+      // fallback for repositories whose id doesn't match a channel
+      if (connectTimeout > 0) {
+         session.setConfigProperty(ConfigurationProperties.CONNECT_TIMEOUT, connectTimeout);
+      }
+      if (readTimeout > 0) {
+         session.setConfigProperty(ConfigurationProperties.REQUEST_TIMEOUT, readTimeout);
+      }
+      // session-wide only
+      if (parallelDownloads > 0) {
+         session.setConfigProperty(THREADS_PROPERTY, parallelDownloads);
+      }
+      if (shareConnections != null) {
+         session.setConfigProperty(CACHE_STATE_PROPERTY, shareConnections);
+      }
+   }
+
+   /**
+    * @return the name of the channel at {@code url}, so that its transport settings apply to a repository created for
+    * that URL, or {@code defaultId} if no channel uses the URL
+    */
+   public static String repositoryId(List<Channel> channels, String url, String defaultId) {
+      final String normalized = stripTrailingSlash(url);
+      return channels.stream()
+         .filter(c -> c.getUrl() != null && stripTrailingSlash(c.getUrl()).equals(normalized))
+         .map(Channel::getName)
+         .findFirst()
+         .orElse(defaultId);
+   }
+
+   private static String stripTrailingSlash(String url) {
+      return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+   }
+
+   /**
+    * Opens a connection to a resource of {@code repository}, honouring the channel's timeouts and the proxy and
+    * credentials that the session configures for the repository. {@code repository} has to come from
+    * {@link RepositorySystem#newResolutionRepositories}, so that the session's proxy and authentication selectors
+    * have been applied.
+    */
+   static URLConnection openConnection(RepositorySystemSession session, RemoteRepository repository, String url,
+                                       TransportSettings transport) throws IOException {
+      final org.eclipse.aether.repository.Proxy proxy = repository.getProxy();
+      final URLConnection connection = proxy == null ? new URL(url).openConnection()
+         : new URL(url).openConnection(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxy.getHost(), proxy.getPort())));
+      if (transport != null && transport.getConnectTimeout() != null) {
+         connection.setConnectTimeout(transport.getConnectTimeout());
+      }
+      if (transport != null && transport.getReadTimeout() != null) {
+         connection.setReadTimeout(transport.getReadTimeout());
+      }
+      try (AuthenticationContext auth = AuthenticationContext.forRepository(session, repository)) {
+         setBasicAuthentication(connection, "Authorization", auth);
+      }
+      try (AuthenticationContext auth = AuthenticationContext.forProxy(session, repository)) {
+         setBasicAuthentication(connection, "Proxy-Authorization", auth);
+      }
+      return connection;
+   }
+
+   private static void setBasicAuthentication(URLConnection connection, String header, AuthenticationContext auth) {
+      if (auth == null || auth.get(AuthenticationContext.USERNAME) == null) {
+         return;
+      }
+      final String password = auth.get(AuthenticationContext.PASSWORD);
+      final String credentials = auth.get(AuthenticationContext.USERNAME) + ":" + (password == null ? "" : password);
+      connection.setRequestProperty(header, "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+   }
+
+   private static RepositorySystem newRepositorySystem()
+   {
+      /*
+       * Aether's components implement org.eclipse.aether.spi.locator.Service to ease manual wiring and using the
+       * prepopulated DefaultServiceLocator, we only need to register the repository connector and transporter
+       * factories.
+       */
+      DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
+      locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class );
+      locator.addService(TransporterFactory.class, FileTransporterFactory.class );
+      locator.addService( TransporterFactory.class, HttpTransporterFactory.class );
+
+      locator.setErrorHandler( new DefaultServiceLocator.ErrorHandler()
+      {
+         @Override
+         public void serviceCreationFailed( Class<?> type, Class<?> impl, Throwable exception )
+         {
+            System.out.println(String.format("Service creation failed for %s with implementation %s",
+                                             type, impl ));
+            exception.printStackTrace();
+         }
+      } );
+
+      return locator.getService( RepositorySystem.class );
+   }
+}
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.prospero.impl.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.prospero.api.ComparableVersions;
+import com.redhat.prospero.impl.ProsperoConfig;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * Remembers the highest version of an artifact found in a channel, so that repeated "what's latest" queries within
+ * {@code prospero.metadata.ttl-seconds} are answered from memory or from the copy persisted in the local cache.
+ * Setting {@code prospero.metadata.refresh} ignores stored entries and queries the channels again.
+ *
+ * One instance is shared by all repositories using the same local cache and is flushed once on exit. Other processes
+ * may flush into the same file concurrently, so flushing merges with the stored copy under a file lock, keeping the
+ * newer of two entries for the same artifact.
+ */
+public class VersionMetadataCache {
+
+   public static final String TTL_PROPERTY = "prospero.metadata.ttl-seconds";
+   public static final String REFRESH_PROPERTY = "prospero.metadata.refresh";
+   public static final long DEFAULT_TTL_SECONDS = 600;
+
+   private static final String NO_VERSION = "-";
+   private static final Map<Path, VersionMetadataCache> SHARED = new ConcurrentHashMap<>();
+
+   private final Path storeFile;
+   private final long ttl;
+   private final boolean forceRefresh;
+   private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong misses = new AtomicLong();
+   private final AtomicBoolean dirty = new AtomicBoolean();
+   private final boolean persistent;
+
+   public VersionMetadataCache(Path storeFile, long ttlSeconds, boolean forceRefresh) {
+      this(storeFile, ttlSeconds, forceRefresh, true);
+   }
+
+   private VersionMetadataCache(Path storeFile, long ttlSeconds, boolean forceRefresh, boolean persistent) {
+      this.storeFile = storeFile;
+      this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+      this.forceRefresh = forceRefresh;
+      this.persistent = persistent;
+      load();
+   }
+
+   /**
+    * @return the metadata cache stored in {@code cache}, shared by all repositories using the same local cache
+    */
+   public static VersionMetadataCache forCache(LocalArtifactCache cache) {
+      return SHARED.computeIfAbsent(cache.getVersionMetadataFile(), storeFile -> {
+         final VersionMetadataCache metadataCache = new VersionMetadataCache(storeFile,
+                                                                             ProsperoConfig.getLong(TTL_PROPERTY, DEFAULT_TTL_SECONDS),
+                                                                             ProsperoConfig.getBoolean(REFRESH_PROPERTY, false));
+         Runtime.getRuntime().addShutdownHook(new Thread(metadataCache::flush));
+         return metadataCache;
+      });
+   }
+
+   /**
+    * @return a cache starting from the entries stored in a read-only {@code cache}, never writing them back
+    */
+   public static VersionMetadataCache readOnly(LocalArtifactCache cache) {
+      return new VersionMetadataCache(cache.getVersionMetadataFile(), ProsperoConfig.getLong(TTL_PROPERTY, DEFAULT_TTL_SECONDS),
+                                      ProsperoConfig.getBoolean(REFRESH_PROPERTY, false), false);
+   }
+
+   /**
+    * @return {@code null} on a miss, otherwise the cached lookup. A cached lookup with no version means that the channel
+    * has no version at or above {@code minVersion}.
+    */
+   public Lookup get(String channelKey, String groupId, String artifactId, String minVersion) {
+      if (ttl <= 0 || forceRefresh) {
+         misses.incrementAndGet();
+         return null;
+      }
+
+      final Entry entry = entries.get(key(channelKey, groupId, artifactId));
+      if (entry != null && System.currentTimeMillis() - entry.timestamp <= ttl) {
+         final ComparableVersion requested = ComparableVersions.parse(minVersion);
+         if (entry.highestVersion != null && ComparableVersions.parse(entry.highestVersion).compareTo(requested) >= 0) {
+            hits.incrementAndGet();
+            return new Lookup(entry.highestVersion);
+         }
+         // nothing found above the previous floor means nothing above a higher floor either
+         if (entry.highestVersion == null && ComparableVersions.parse(entry.minVersion).compareTo(requested) <= 0) {
+            hits.incrementAndGet();
+            return new Lookup(null);
+         }
+      }
+      misses.incrementAndGet();
+      return null;
+   }
+
+   public void put(String channelKey, String groupId, String artifactId, String minVersion, String highestVersion) {
+      if (ttl <= 0) {
+         return;
+      }
+      entries.put(key(channelKey, groupId, artifactId), new Entry(System.currentTimeMillis(), minVersion, highestVersion));
+      dirty.set(true);
+   }
+
+   public long getHits() {
+      return hits.get();
+   }
+
+   public long getMisses() {
+      return misses.get();
+   }
+
+   public synchronized void flush() {
+      if (storeFile == null || !persistent || !dirty.getAndSet(false)) {
+         return;
+      }
+
+      try {
+         Files.createDirectories(storeFile.getParent());
+         final Path lockFile = storeFile.resolveSibling(storeFile.getFileName() + ".lock");
+         try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+              FileLock ignored = lockChannel.lock()) {
+            // entries stored by other processes since this one loaded the file
+            final Map<String, Entry> merged = new HashMap<>(readStored());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+               merged.merge(e.getKey(), e.getValue(), (stored, own) -> stored.timestamp > own.timestamp ? stored : own);
+            }
+
+            final Properties properties = new Properties();
+            final long now = System.currentTimeMillis();
+            for (Map.Entry<String, Entry> e : merged.entrySet()) {
+               if (now - e.getValue().timestamp <= ttl) {
+                  properties.setProperty(e.getKey(), e.getValue().serialize());
+               }
+            }
+
+            final Path tmp = Files.createTempFile(storeFile.getParent(), storeFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+               properties.store(out, null);
+            }
+            Files.move(tmp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         }
+      } catch (IOException e) {
+         // the persisted copy is only an optimization
+         System.out.println("Unable to store version metadata cache: " + e.getMessage());
+      }
+   }
+
+   @Override
+   public String toString() {
+      return String.format("VersionMetadataCache{hits=%d, misses=%d, entries=%d}", hits.get(), misses.get(), entries.size());
+   }
+
+   private void load() {
+      if (storeFile == null || forceRefresh || ttl <= 0) {
+         return;
+      }
+      entries.putAll(readStored());
+   }
+
+   private Map<String, Entry> readStored() {
+      final Map<String, Entry> stored = new HashMap<>();
+      if (!Files.exists(storeFile)) {
+         return stored;
+      }
+
+      final Properties properties = new Properties();
+      try (InputStream in = Files.newInputStream(storeFile)) {
+         properties.load(in);
+      } catch (IOException e) {
+         return stored;
+      }
+      for (String key : properties.stringPropertyNames()) {
+         final Entry entry = Entry.parse(properties.getProperty(key));
+         if (entry != null) {
+            stored.put(key, entry);
+         }
+      }
+      return stored;
+   }
+
+   private static String key(String channelKey, String groupId, String artifactId) {
+      return channelKey + "|" + groupId + ":" + artifactId;
+   }
+
+   public static class Lookup {
+      private final String highestVersion;
+
+      Lookup(String highestVersion) {
+         this.highestVersion = highestVersion;
+      }
+
+      public String getHighestVersion() {
+         return highestVersion;
+      }
+   }
+
+   private static class Entry {
+      private final long timestamp;
+      private final String minVersion;
+      private final String highestVersion;
+
+      Entry(long timestamp, String minVersion, String highestVersion) {
+         this.timestamp = timestamp;
+         this.minVersion = minVersion;
+         this.highestVersion = highestVersion;
+      }
+
+      String serialize() {
+         return timestamp + "|" + minVersion + "|" + (highestVersion == null ? NO_VERSION : highestVersion);
+      }
+
+      static Entry parse(String value) {
+         final String[] parts = value.split("\\|");
+         if (parts.length != 3) {
+            return null;
+         }
+         try {
+            return new Entry(Long.parseLong(parts[0]), parts[1], NO_VERSION.equals(parts[2]) ? null : parts[2]);
+         } catch (NumberFormatException e) {
+            return null;
+         }
+      }
+   }
+}
@@ -17,105 +17,192 @@
 
 package com.redhat.prospero.xml;
 
+import javax.xml.stream.XMLStreamConstants;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 import com.redhat.prospero.api.Artifact;
 import com.redhat.prospero.api.Package;
 import com.redhat.prospero.api.Manifest;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import com.redhat.prospero.impl.ProsperoConfig;
 
 public class ManifestXmlSupport extends XmlSupport {
 
    private static final ManifestXmlSupport INSTANCE = new ManifestXmlSupport();
+   public static final String FSYNC_PROPERTY = "prospero.manifest.fsync";
+   private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+   private static final String LINE_SEPARATOR = System.lineSeparator();
 
    private ManifestXmlSupport() {
 
    }
 
    public static Manifest parse(File manifestFile) throws XmlException {
-      return INSTANCE.doParse(manifestFile);
+      try {
+         return INSTANCE.doParse(manifestFile);
+      } catch (IllegalArgumentException e) {
+         // e.g. duplicate artifact entries
+         throw new XmlException("Invalid manifest " + manifestFile + ": " + e.getMessage(), e);
+      }
    }
 
+   /**
+    * Writes the manifest into a temporary file next to {@code manifestFile} and renames it over the live manifest, so
+    * an interrupted write never leaves the installation without a complete manifest. The previous manifest is kept as
+    * {@code manifest.xml_bkp}. Unless {@code prospero.manifest.fsync} is {@code false}, the data is forced to disk
+    * before the rename.
+    */
    public static void write(Manifest manifest, File manifestFile) throws XmlException {
-      // if file exists backup it (move)
-      if (manifestFile.exists()) {
+      final Path target = manifestFile.toPath().toAbsolutePath();
+      final Path dir = target.getParent();
+
+      // if file exists backup it
+      if (Files.exists(target)) {
          try {
-            Files.move(manifestFile.toPath(), manifestFile.toPath().getParent().resolve(manifestFile.getName() + "_bkp"), StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(target, dir.resolve(manifestFile.getName() + "_bkp"), StandardCopyOption.REPLACE_EXISTING);
          } catch (IOException e) {
             throw new XmlException("Unable to backup manifest file", e);
          }
       }
 
       // export manifest
+      final boolean fsync = ProsperoConfig.getBoolean(FSYNC_PROPERTY, true);
+      Path tmp = null;
       try {
-         final PrintWriter printWriter = new PrintWriter(manifestFile);
-         printWriter.println("<manifest>");
-         // add packages
-         for (Package aPackage : manifest.getPackages()) {
-            printWriter.println(String.format("<package group=\"%s\" name=\"%s\" version=\"%s\"/>",
-                                              aPackage.getGroupId(), aPackage.getArtifactId(), aPackage.getVersion()));
+         tmp = Files.createTempFile(dir, manifestFile.getName(), ".tmp");
+         try (FileOutputStream out = new FileOutputStream(tmp.toFile());
+              Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+            writeManifest(manifest, writer);
+            writer.flush();
+            if (fsync) {
+               out.getFD().sync();
+            }
          }
 
-         // add artifacts
-         for (Artifact artifact : manifest.getArtifacts()) {
-            printWriter.println(String.format("<artifact package=\"%s\" name=\"%s\" version=\"%s\" classifier=\"%s\"/>",
-                                              artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifact.getClassifier()));
+         // keep the permissions and owner of the live manifest rather than those of a temporary file
+         copyFileAttributes(target, tmp);
+         Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         tmp = null;
+         if (fsync) {
+            syncDirectory(dir);
          }
-
-         printWriter.println("</manifest>");
-         printWriter.flush();
-         printWriter.close();
-      } catch (FileNotFoundException e) {
+      } catch (IOException e) {
          throw new XmlException("Unable to write manifest", e);
+      } finally {
+         if (tmp != null) {
+            try {
+               Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+               // ignore
+            }
+         }
       }
-
    }
 
-   public static void write(Manifest manifest) throws XmlException {
-      write(manifest, manifest.getManifestFile().toFile());
-   }
+   private static void writeManifest(Manifest manifest, Writer writer) throws IOException {
+      writer.write("<manifest>");
+      writer.write(LINE_SEPARATOR);
+      // add packages
+      for (Package aPackage : manifest.getPackages()) {
+         writer.write("<package group=\"");
+         writeAttribute(writer, aPackage.getGroupId());
+         writer.write("\" name=\"");
+         writeAttribute(writer, aPackage.getArtifactId());
+         writer.write("\" version=\"");
+         writeAttribute(writer, aPackage.getVersion());
+         writer.write("\"/>");
+         writer.write(LINE_SEPARATOR);
+      }
 
-   private Manifest doParse(File manifestFile) throws XmlException {
-      Document input = readDocument(manifestFile);
+      // add artifacts
+      for (Artifact artifact : manifest.getArtifacts()) {
+         writer.write("<artifact package=\"");
+         writeAttribute(writer, artifact.getGroupId());
+         writer.write("\" name=\"");
+         writeAttribute(writer, artifact.getArtifactId());
+         writer.write("\" version=\"");
+         writeAttribute(writer, artifact.getVersion());
+         writer.write("\" classifier=\"");
+         writeAttribute(writer, artifact.getClassifier());
+         writer.write("\"/>");
+         writer.write(LINE_SEPARATOR);
+      }
 
-      final ArrayList<Artifact> entries = parseArtifacts(input);
-      final ArrayList<Package> packages = parsePackages(input);
-      final Manifest manifest = new Manifest(entries, packages, manifestFile.toPath());
-      return manifest;
+      writer.write("</manifest>");
+      writer.write(LINE_SEPARATOR);
    }
 
-   private ArrayList<Artifact> parseArtifacts(Document input) throws XmlException {
-      NodeList nodes = nodesFromXPath(input, "//artifact");
-      final ArrayList<Artifact> entries = new ArrayList<>(nodes.getLength());
-      for (int i = 0; i < nodes.getLength(); i++) {
-         Element node = (Element) nodes.item(i);
-         entries.add(new Artifact(node.getAttribute("package"),
-                                  node.getAttribute("name"),
-                                  node.getAttribute("version"),
-                                  node.getAttribute("classifier")));
+   private static void writeAttribute(Writer writer, String value) throws IOException {
+      final String text = String.valueOf(value);
+      for (int i = 0; i < text.length(); i++) {
+         final char c = text.charAt(i);
+         switch (c) {
+            case '&':
+               writer.write("&amp;");
+               break;
+            case '<':
+               writer.write("&lt;");
+               break;
+            case '>':
+               writer.write("&gt;");
+               break;
+            case '"':
+               writer.write("&quot;");
+               break;
+            default:
+               writer.write(c);
+         }
       }
-      return entries;
    }
 
-   private ArrayList<Package> parsePackages(Document input) throws XmlException {
-      NodeList nodes = nodesFromXPath(input, "//package");
-      final ArrayList<Package> entries = new ArrayList<>(nodes.getLength());
-      for (int i = 0; i < nodes.getLength(); i++) {
-         Element node = (Element) nodes.item(i);
-         entries.add(new Package(node.getAttribute("group"),
-                                 node.getAttribute("name"),
-                                 node.getAttribute("version")));
+   private static void syncDirectory(Path dir) {
+      try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+         channel.force(true);
+      } catch (IOException e) {
+         // not supported on all platforms, the rename itself is already atomic
       }
-      return entries;
+   }
+
+   public static void write(Manifest manifest) throws XmlException {
+      write(manifest, manifest.getManifestFile().toFile());
+   }
+
+   private Manifest doParse(File manifestFile) throws XmlException {
+      return readStream(manifestFile, reader -> {
+         final ArrayList<Artifact> entries = new ArrayList<>();
+         final ArrayList<Package> packages = new ArrayList<>();
+         while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+               continue;
+            }
+            switch (reader.getLocalName()) {
+               case "artifact":
+                  entries.add(new Artifact(attribute(reader, "package"),
+                                           attribute(reader, "name"),
+                                           attribute(reader, "version"),
+                                           attribute(reader, "classifier")));
+                  break;
+               case "package":
+                  packages.add(new Package(attribute(reader, "group"),
+                                           attribute(reader, "name"),
+                                           attribute(reader, "version")));
+                  break;
+               default:
+                  // ignore
+            }
+         }
+         return new Manifest(entries, packages, manifestFile.toPath());
+      });
    }
 }
@@ -20,12 +20,27 @@ package com.redhat.prospero.xml;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -34,14 +49,31 @@ import org.xml.sax.SAXException;
 
 public class XmlSupport {
 
-   protected XPath xpath = XPathFactory.newInstance().newXPath();
-
-   protected Document readDocument(File xmlFile) throws XmlException {
+   // factories are expensive to look up and configure, but not thread safe - keep one per thread
+   private static final ThreadLocal<DocumentBuilderFactory> DOCUMENT_BUILDER_FACTORY = ThreadLocal.withInitial(() -> {
       try {
          DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
          factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
          factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-         Document input = factory.newDocumentBuilder().parse(xmlFile);
+         return factory;
+      } catch (ParserConfigurationException e) {
+         throw new IllegalStateException(e);
+      }
+   });
+
+   private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+      return factory;
+   });
+
+   private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+
+   protected Document readDocument(File xmlFile) throws XmlException {
+      try {
+         Document input = DOCUMENT_BUILDER_FACTORY.get().newDocumentBuilder().parse(xmlFile);
          return input;
       } catch (IOException | ParserConfigurationException | SAXException e) {
          throw new XmlException("Failed to parse XML descriptor", e);
@@ -50,10 +82,81 @@ public class XmlSupport {
 
    protected NodeList nodesFromXPath(Node input, String expr) throws XmlException {
       try {
-         NodeList nodes = (NodeList) xpath.evaluate(expr, input, XPathConstants.NODESET);
+         NodeList nodes = (NodeList) XPATH.get().evaluate(expr, input, XPathConstants.NODESET);
          return nodes;
       } catch (XPathExpressionException e) {
          throw new XmlException("Failed to parse XML descriptor", e);
       }
    }
+
+   /**
+    * Streams the file through a StAX reader without building a document tree.
+    */
+   protected <T> T readStream(File xmlFile, StreamParser<T> parser) throws XmlException {
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(xmlFile.toPath()))) {
+         final XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(in);
+         try {
+            return parser.parse(reader);
+         } finally {
+            reader.close();
+         }
+      } catch (IOException | XMLStreamException e) {
+         throw new XmlException("Failed to parse XML descriptor", e);
+      }
+   }
+
+   /**
+    * Collects {@code attribute} values of all {@code element}s that are direct children of a {@code parent} element,
+    * equivalent to evaluating {@code //parent/element/@attribute}. Missing attributes are returned as empty strings.
+    */
+   protected List<String> readAttributes(File xmlFile, String parent, String element, String attribute) throws XmlException {
+      return readStream(xmlFile, reader -> {
+         final List<String> values = new ArrayList<>();
+         final Deque<String> path = new ArrayDeque<>();
+         while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+               if (element.equals(reader.getLocalName()) && parent.equals(path.peek())) {
+                  values.add(attribute(reader, attribute));
+               }
+               path.push(reader.getLocalName());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+               path.pop();
+            }
+         }
+         return values;
+      });
+   }
+
+   /**
+    * Gives {@code replacement} the POSIX permissions, owner and group of {@code original}, so that renaming it over the
+    * original does not leave the restrictive permissions of a temporary file behind. Ownership can only be changed by
+    * privileged users and is skipped otherwise; nothing is copied on file systems without POSIX attributes.
+    */
+   protected static void copyFileAttributes(Path original, Path replacement) throws IOException {
+      if (!Files.exists(original)) {
+         return;
+      }
+      final PosixFileAttributeView view = Files.getFileAttributeView(replacement, PosixFileAttributeView.class);
+      if (view == null) {
+         return;
+      }
+      final PosixFileAttributes attributes = Files.readAttributes(original, PosixFileAttributes.class);
+      view.setPermissions(attributes.permissions());
+      try {
+         view.setGroup(attributes.group());
+         view.setOwner(attributes.owner());
+      } catch (FileSystemException e) {
+         // not permitted for an unprivileged user, the file keeps the owner running prospero
+      }
+   }
+
+   protected static String attribute(XMLStreamReader reader, String name) {
+      final String value = reader.getAttributeValue(null, name);
+      return value == null ? "" : value;
+   }
+
+   protected interface StreamParser<T> {
+      T parse(XMLStreamReader reader) throws XMLStreamException, XmlException;
+   }
 }
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.redhat.prospero.impl.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.api.Channel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+public class BinaryDeltaTest {
+
+   private static final Artifact INSTALLED = new Artifact("org.test", "lib", "1.0", "");
+   private static final Artifact UPDATE = new Artifact("org.test", "lib", "1.1", "");
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private Path repository;
+   private Path installedFile;
+   private byte[] from;
+   private byte[] to;
+
+   @Before
+   public void setUp() throws IOException {
+      System.setProperty(MavenRepository.DELTA_PROPERTY, "true");
+      repository = temp.newFolder("repository").toPath();
+
+      final Random random = new Random(42);
+      from = new byte[64 * 1024];
+      random.nextBytes(from);
+      // the new version keeps most of the old content, with a changed region and appended data
+      to = Arrays.copyOf(from, from.length + 3000);
+      for (int i = 20_000; i < 21_000; i++) {
+         to[i] = (byte) random.nextInt();
+      }
+      for (int i = from.length; i < to.length; i++) {
+         to[i] = (byte) random.nextInt();
+      }
+
+      installedFile = temp.newFile(INSTALLED.getFileName()).toPath();
+      Files.write(installedFile, from);
+   }
+
+   @After
+   public void tearDown() {
+      System.clearProperty(MavenRepository.DELTA_PROPERTY);
+   }
+
+   @Test
+   public void updateIsRebuiltFromPublishedDelta() throws Exception {
+      // only the delta is published, the update can't come from anywhere else
+      publishDelta(delta(installedFile));
+
+      final File resolved = newRepository().resolveUpdate(INSTALLED, installedFile.toFile(), UPDATE);
+
+      assertArrayEquals(to, Files.readAllBytes(resolved.toPath()));
+   }
+
+   @Test
+   public void fullArtifactIsDownloadedIfDeltaBelongsToAnotherSource() throws Exception {
+      final Path otherSource = temp.newFile("other.jar").toPath();
+      Files.write(otherSource, Arrays.copyOf(from, from.length - 1));
+      publishDelta(delta(otherSource));
+      publishFullArtifact();
+
+      final File resolved = newRepository().resolveUpdate(INSTALLED, installedFile.toFile(), UPDATE);
+
+      assertArrayEquals(to, Files.readAllBytes(resolved.toPath()));
+   }
+
+   @Test
+   public void fullArtifactIsDownloadedIfDeltaIsCorrupted() throws Exception {
+      final byte[] delta = delta(installedFile);
+      publishDelta(Arrays.copyOf(delta, delta.length - 5));
+      publishFullArtifact();
+
+      final File resolved = newRepository().resolveUpdate(INSTALLED, installedFile.toFile(), UPDATE);
+
+      assertArrayEquals(to, Files.readAllBytes(resolved.toPath()));
+   }
+
+   @Test
+   public void smallFilesRoundTrip() throws Exception {
+      // both shorter than a block, nothing can be copied
+      assertRoundTrip(Arrays.copyOf(from, 100), Arrays.copyOfRange(from, 50, 1000));
+   }
+
+   @Test
+   public void targetShorterThanBlockRoundTrip() throws Exception {
+      assertRoundTrip(from, Arrays.copyOf(from, 1023));
+   }
+
+   @Test
+   public void emptySourceRoundTrip() throws Exception {
+      assertRoundTrip(new byte[0], to);
+   }
+
+   @Test
+   public void emptyTargetRoundTrip() throws Exception {
+      assertRoundTrip(from, new byte[0]);
+   }
+
+   @Test
+   public void copyPastTheSourceIsRejected() throws Exception {
+      final ByteArrayOutputStream delta = header();
+      final DataOutputStream data = new DataOutputStream(delta);
+      data.writeByte(1); // copy
+      data.writeInt(Integer.MAX_VALUE);
+      data.writeInt(10);
+      data.writeByte(0); // end
+
+      assertRejected(delta.toByteArray());
+   }
+
+   @Test
+   public void negativeInsertIsRejected() throws Exception {
+      final ByteArrayOutputStream delta = header();
+      final DataOutputStream data = new DataOutputStream(delta);
+      data.writeByte(2); // insert
+      data.writeInt(-1);
+      data.writeByte(0); // end
+
+      assertRejected(delta.toByteArray());
+   }
+
+   private void assertRoundTrip(byte[] source, byte[] target) throws IOException {
+      final Path sourceFile = temp.newFile().toPath();
+      final Path targetFile = temp.newFile().toPath();
+      Files.write(sourceFile, source);
+      Files.write(targetFile, target);
+      final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+      BinaryDelta.diff(sourceFile, targetFile, delta);
+
+      final Path rebuilt = temp.getRoot().toPath().resolve("rebuilt.jar");
+      BinaryDelta.apply(sourceFile, new ByteArrayInputStream(delta.toByteArray()), rebuilt);
+
+      assertArrayEquals(target, Files.readAllBytes(rebuilt));
+   }
+
+   private void assertRejected(byte[] delta) {
+      try {
+         BinaryDelta.apply(installedFile, new ByteArrayInputStream(delta), temp.getRoot().toPath().resolve(UPDATE.getFileName()));
+         fail("Corrupted delta was applied");
+      } catch (IOException e) {
+         // expected
+      }
+   }
+
+   // valid header for turning the installed file into the update
+   private ByteArrayOutputStream header() throws Exception {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream data = new DataOutputStream(bytes);
+      data.writeInt(0x50525344);
+      data.writeInt(1);
+      data.writeLong(from.length);
+      data.write(MessageDigest.getInstance("SHA-256").digest(from));
+      data.writeLong(to.length);
+      data.write(MessageDigest.getInstance("SHA-256").digest(to));
+      data.flush();
+      return bytes;
+   }
+
+   private byte[] delta(Path source) throws IOException {
+      final Path target = temp.newFile().toPath();
+      Files.write(target, to);
+      final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+      BinaryDelta.diff(source, target, delta);
+      return delta.toByteArray();
+   }
+
+   private void publishDelta(byte[] delta) throws IOException {
+      final String fileName = String.format("%s-%s-%s.%s", UPDATE.getArtifactId(), UPDATE.getVersion(),
+                                            BinaryDelta.classifier(UPDATE.getClassifier(), INSTALLED.getVersion()),
+                                            BinaryDelta.extension(UPDATE.getPackaging()));
+      publish(fileName, delta);
+   }
+
+   private void publishFullArtifact() throws IOException {
+      publish(UPDATE.getFileName(), to);
+   }
+
+   private void publish(String fileName, byte[] content) throws IOException {
+      final Path dir = repository.resolve("org/test/lib").resolve(UPDATE.getVersion());
+      Files.createDirectories(dir);
+      try (OutputStream out = Files.newOutputStream(dir.resolve(fileName))) {
+         out.write(content);
+      }
+   }
+
+   private MavenRepository newRepository() throws IOException {
+      final Channel channel = new Channel("test", repository.toUri().toString());
+      return new MavenRepository(Collections.singletonList(channel), new LocalArtifactCache(temp.newFolder("cache").toPath(), 0));
+   }
+}
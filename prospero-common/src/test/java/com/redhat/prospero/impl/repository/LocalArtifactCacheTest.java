@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.redhat.prospero.impl.repository;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LocalArtifactCacheTest {
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void openTakesSharedLockOnCache() throws Exception {
+      final Path root = temp.newFolder("cache").toPath();
+
+      assertEquals(root, new LocalArtifactCache(root, 1024).open());
+
+      // a second open in the same JVM reuses the lock
+      new LocalArtifactCache(root, 1024).open();
+
+      try (FileChannel channel = FileChannel.open(root.resolve(".prospero-cache.lock"), StandardOpenOption.READ,
+                                                  StandardOpenOption.WRITE)) {
+         channel.tryLock();
+         fail("Cache lock should be held after open");
+      } catch (OverlappingFileLockException e) {
+         // expected
+      }
+   }
+
+   @Test
+   public void openEvictsLeastRecentlyUsedVersions() throws Exception {
+      final Path root = temp.newFolder("cache").toPath();
+      final Path oldVersion = cached(root, "1.0", 1_000L);
+      final Path newVersion = cached(root, "1.1", 2_000L);
+
+      new LocalArtifactCache(root, 150, 0).open();
+
+      assertFalse(Files.exists(oldVersion));
+      assertTrue(Files.exists(newVersion));
+   }
+
+   @Test
+   public void readOnlyViewNeverEvicts() throws Exception {
+      final Path root = temp.newFolder("cache").toPath();
+      final Path oldVersion = cached(root, "1.0", 1_000L);
+      cached(root, "1.1", 2_000L);
+
+      new LocalArtifactCache(root, 150, 0).readOnly().open();
+
+      assertTrue(Files.exists(oldVersion));
+      assertFalse(Files.exists(root.resolve(".prospero-cache.lock")));
+   }
+
+   private static Path cached(Path root, String version, long lastModified) throws IOException {
+      final Path file = root.resolve("org/test/lib").resolve(version).resolve("lib-" + version + ".jar");
+      Files.createDirectories(file.getParent());
+      Files.write(file, new byte[100]);
+      Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+      return file;
+   }
+}
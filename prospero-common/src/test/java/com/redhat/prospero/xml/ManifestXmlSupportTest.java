@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.redhat.prospero.xml;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.redhat.prospero.api.Artifact;
+import com.redhat.prospero.api.Manifest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ManifestXmlSupportTest {
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void duplicateEntryIsReportedAsXmlException() throws Exception {
+      final Path manifestFile = manifest("<artifact package=\"org.test\" name=\"lib\" version=\"1.0\" classifier=\"\"/>",
+                                         "<artifact package=\"org.test\" name=\"lib\" version=\"1.1\" classifier=\"\"/>");
+
+      try {
+         ManifestXmlSupport.parse(manifestFile.toFile());
+         fail("Manifest with duplicate entries was parsed");
+      } catch (XmlException e) {
+         // expected
+      }
+   }
+
+   @Test
+   public void artifactsSnapshotIsReusedUntilUpdate() throws Exception {
+      final Manifest manifest = ManifestXmlSupport.parse(
+         manifest("<artifact package=\"org.test\" name=\"lib\" version=\"1.0\" classifier=\"\"/>").toFile());
+
+      final List<Artifact> before = manifest.getArtifacts();
+      assertSame(before, manifest.getArtifacts());
+
+      manifest.updateVersion(new Artifact("org.test", "lib", "1.1", ""));
+
+      assertEquals("1.0", before.get(0).getVersion());
+      assertEquals("1.1", manifest.getArtifacts().get(0).getVersion());
+   }
+
+   private Path manifest(String... artifacts) throws Exception {
+      final Path manifestFile = temp.newFile("manifest.xml").toPath();
+      Files.write(manifestFile, ("<manifest>" + String.join("", artifacts) + "</manifest>").getBytes(StandardCharsets.UTF_8));
+      return manifestFile;
+   }
+}
@@ -19,30 +19,53 @@ package com.redhat.prospero;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.redhat.prospero.api.ArtifactNotFoundException;
 import com.redhat.prospero.api.Channel;
+import com.redhat.prospero.api.ComparableVersions;
 import com.redhat.prospero.api.Manifest;
+import com.redhat.prospero.impl.ProsperoConfig;
 import com.redhat.prospero.impl.repository.MavenRepository;
 import com.redhat.prospero.xml.ManifestXmlSupport;
 import com.redhat.prospero.xml.XmlException;
 import org.jboss.galleon.ProvisioningException;
+import org.jboss.galleon.runtime.FeaturePackRuntime;
 import org.jboss.galleon.runtime.ProvisioningRuntime;
 import org.jboss.galleon.universe.maven.MavenArtifact;
 import org.jboss.galleon.universe.maven.MavenUniverseException;
 
 public class ProsperoArtifactResolver {
 
+   public static final String PREFETCH_THREADS_PROPERTY = "prospero.prefetch.threads";
+   private static final String WILDFLY_RESOURCES = "wildfly";
+   private static final String ARTIFACT_VERSIONS_FILE = "artifact-versions.properties";
+
    private final List<Channel> channels;
-   private Map<String, String> resolvedArtifactStreams = new HashMap<>();
+   private final Map<String, String> resolvedArtifactStreams = new ConcurrentHashMap<>();
    private MavenRepository repository;
+   // lookups and downloads keyed by the requested groupId:artifactId:classifier:version. Concurrent requests for the
+   // same coordinates share one in-flight resolution
+   private final Map<String, CompletableFuture<Resolved>> resolutions = new ConcurrentHashMap<>();
+   private final AtomicBoolean prefetched = new AtomicBoolean();
 
    public ProsperoArtifactResolver(Path channelFile) throws ProvisioningException {
       this(readChannels(channelFile));
@@ -94,24 +117,170 @@ public class ProsperoArtifactResolver {
       }
    }
 
+   /**
+    * Resolves the latest versions of the artifacts listed in the feature-pack layout and downloads them concurrently
+    * into the local cache, so that the following {@link #resolve(MavenArtifact)} calls are local lookups.
+    *
+    * @param artifactVersions artifact versions in the same format as passed to {@link #writeManifestFile}
+    */
+   public void prefetch(Map<String, String> artifactVersions) throws MavenUniverseException {
+      final List<com.redhat.prospero.api.Artifact> artifacts = new ArrayList<>(artifactVersions.size());
+      for (String coordinates : artifactVersions.values()) {
+         final MavenArtifact artifact = MavenArtifact.fromString(coordinates);
+         // versions are stored as groupId:artifactId:version:classifier:extension, see writeManifestFile
+         artifacts.add(new com.redhat.prospero.api.Artifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getExtension(), artifact.getClassifier()));
+      }
+      prefetch(artifacts);
+   }
+
+   public void prefetch(Collection<com.redhat.prospero.api.Artifact> artifacts) {
+      final long start = System.currentTimeMillis();
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, ProsperoConfig.getInt(PREFETCH_THREADS_PROPERTY, 8)));
+      try {
+         final List<Future<?>> results = new ArrayList<>(artifacts.size());
+         for (com.redhat.prospero.api.Artifact artifact : artifacts) {
+            results.add(executor.submit(() -> {
+               try {
+                  resolveLatest(artifact);
+               } catch (ArtifactNotFoundException | RuntimeException e) {
+                  // resolve() will try again and report the failure
+               }
+            }));
+         }
+         for (Future<?> result : results) {
+            result.get();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+         // failures are handled per artifact
+      } finally {
+         executor.shutdownNow();
+      }
+      System.out.println(String.format("Prefetched %d artifacts in %d ms", artifacts.size(), System.currentTimeMillis() - start));
+   }
+
+   /**
+    * Resolves the artifact, first prefetching all artifacts listed in the {@code artifact-versions.properties} of the
+    * runtime's feature-packs if this is the first resolution. Can be called from several threads at once.
+    *
+    * Used instead of {@link #resolve(MavenArtifact)} by the prospero branch of wildfly-galleon-plugins, which passes
+    * the provisioning runtime of the feature-packs being installed.
+    */
+   public void resolve(MavenArtifact artifact, ProvisioningRuntime runtime) throws MavenUniverseException {
+      resolve(artifact, runtime == null ? null : () -> readArtifactVersions(runtime));
+   }
+
+   // artifactVersions are only read by the first resolution
+   void resolve(MavenArtifact artifact, ArtifactVersions artifactVersions) throws MavenUniverseException {
+      if (artifactVersions != null && prefetched.compareAndSet(false, true)) {
+         prefetch(artifactVersions.read());
+      }
+      resolve(artifact);
+   }
+
+   /**
+    * Can be called from several threads at once.
+    */
    public void resolve(MavenArtifact artifact) throws MavenUniverseException {
 
       if (artifact.isResolved()) {
          throw new MavenUniverseException("Artifact is already resolved");
       }
       final com.redhat.prospero.api.Artifact prosperoArtifact = new com.redhat.prospero.api.Artifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifact.getClassifier());
-      final String latestVersion = repository.findLatestVersionOf(prosperoArtifact).getVersion();
-      final MavenArtifact streamDef = MavenArtifact.fromString(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":[" + artifact.getVersion() + ",)");
-      System.out.println(streamDef + " == " + latestVersion);
-
-      resolvedArtifactStreams.put(artifact.getGroupId() + ":" + artifact.getArtifactId(), latestVersion);
 
       try {
-         final File resolvedPath = repository.resolve(prosperoArtifact.newVersion(latestVersion));
-         artifact.setVersion(latestVersion);
-         artifact.setPath(resolvedPath.toPath());
+         final Resolved resolved = resolveLatest(prosperoArtifact);
+         artifact.setVersion(resolved.version);
+         artifact.setPath(resolved.file.toPath());
       } catch (ArtifactNotFoundException e) {
          throw new MavenUniverseException(e.getMessage(), e);
       }
    }
+
+   private static Map<String, String> readArtifactVersions(ProvisioningRuntime runtime) throws MavenUniverseException {
+      final Map<String, String> artifactVersions = new HashMap<>();
+      for (FeaturePackRuntime featurePack : runtime.getFeaturePacks()) {
+         try {
+            final Path versionsFile = featurePack.getResource(WILDFLY_RESOURCES, ARTIFACT_VERSIONS_FILE);
+            if (!Files.exists(versionsFile)) {
+               continue;
+            }
+            final Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(versionsFile, StandardCharsets.UTF_8)) {
+               properties.load(reader);
+            }
+            for (String name : properties.stringPropertyNames()) {
+               artifactVersions.put(name, properties.getProperty(name));
+            }
+         } catch (ProvisioningException | IOException e) {
+            throw new MavenUniverseException("Unable to read artifact versions of " + featurePack.getFPID(), e);
+         }
+      }
+      return artifactVersions;
+   }
+
+   private Resolved resolveLatest(com.redhat.prospero.api.Artifact artifact) throws ArtifactNotFoundException {
+      final String key = key(artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(), artifact.getVersion());
+      final CompletableFuture<Resolved> created = new CompletableFuture<>();
+      final CompletableFuture<Resolved> existing = resolutions.putIfAbsent(key, created);
+      if (existing != null) {
+         return await(existing);
+      }
+
+      // this thread owns the resolution, everyone else asking for the same coordinates waits for it
+      try {
+         final String latestVersion = repository.findLatestVersionOf(artifact).getVersion();
+         System.out.println(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":[" + artifact.getVersion() + ",) == " + latestVersion);
+         // keep the highest version if the same stream was requested with different versions, so the manifest
+         // doesn't depend on the order of concurrent requests
+         resolvedArtifactStreams.merge(artifact.getGroupId() + ":" + artifact.getArtifactId(), latestVersion,
+                                       (v1, v2) -> ComparableVersions.compare(v1, v2) >= 0 ? v1 : v2);
+
+         final File file = repository.resolve(artifact.newVersion(latestVersion));
+         final Resolved resolved = new Resolved(latestVersion, file);
+         created.complete(resolved);
+         return resolved;
+      } catch (ArtifactNotFoundException | RuntimeException e) {
+         // let later requests retry
+         resolutions.remove(key, created);
+         created.completeExceptionally(e);
+         throw e;
+      }
+   }
+
+   private static Resolved await(CompletableFuture<Resolved> resolution) throws ArtifactNotFoundException {
+      try {
+         return resolution.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new ArtifactNotFoundException("Interrupted while resolving artifact", e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof ArtifactNotFoundException) {
+            throw (ArtifactNotFoundException) e.getCause();
+         }
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw new ArtifactNotFoundException(e.getCause().getMessage(), e);
+      }
+   }
+
+   private static String key(String groupId, String artifactId, String classifier, String version) {
+      return groupId + ":" + artifactId + ":" + (classifier == null ? "" : classifier) + ":" + version;
+   }
+
+   interface ArtifactVersions {
+      Map<String, String> read() throws MavenUniverseException;
+   }
+
+   private static class Resolved {
+      private final String version;
+      private final File file;
+
+      Resolved(String version, File file) {
+         this.version = version;
+         this.file = file;
+      }
+   }
 }
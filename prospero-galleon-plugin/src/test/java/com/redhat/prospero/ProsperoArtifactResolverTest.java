@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.redhat.prospero;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.redhat.prospero.impl.repository.LocalArtifactCache;
+import org.jboss.galleon.runtime.ProvisioningRuntime;
+import org.jboss.galleon.universe.maven.MavenArtifact;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProsperoArtifactResolverTest {
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private Path repository;
+   private Path cache;
+   private ProsperoArtifactResolver resolver;
+   private Map<String, String> artifactVersions;
+
+   @Before
+   public void setUp() throws Exception {
+      cache = temp.newFolder("cache").toPath();
+      System.setProperty(LocalArtifactCache.CACHE_DIR_PROPERTY, cache.toString());
+      repository = temp.newFolder("repository").toPath();
+      publish("lib", "1.0", "1.1");
+      publish("other", "2.0", "2.1");
+      resolver = new ProsperoArtifactResolver(repository.toUri().toString());
+
+      // as listed in artifact-versions.properties of a feature-pack
+      artifactVersions = new HashMap<>();
+      artifactVersions.put("org.test:lib", "org.test:lib:1.0::jar");
+      artifactVersions.put("org.test:other", "org.test:other:2.0::jar");
+   }
+
+   @After
+   public void tearDown() {
+      System.clearProperty(LocalArtifactCache.CACHE_DIR_PROPERTY);
+   }
+
+   @Test
+   public void firstResolutionPrefetchesArtifactsOfFeaturePacks() throws Exception {
+      final MavenArtifact artifact = artifact("lib", "1.0");
+
+      resolver.resolve(artifact, () -> artifactVersions);
+
+      assertEquals("1.1", artifact.getVersion());
+      assertTrue(Files.exists(artifact.getPath()));
+      // downloaded before anyone asked for it
+      assertTrue(Files.exists(cache.resolve("org/test/other/2.1/other-2.1.jar")));
+   }
+
+   @Test
+   public void artifactVersionsAreReadOnce() throws Exception {
+      final AtomicInteger reads = new AtomicInteger();
+      final ProsperoArtifactResolver.ArtifactVersions versions = () -> {
+         reads.incrementAndGet();
+         return artifactVersions;
+      };
+
+      resolver.resolve(artifact("lib", "1.0"), versions);
+      resolver.resolve(artifact("other", "2.0"), versions);
+
+      assertEquals(1, reads.get());
+   }
+
+   @Test
+   public void resolutionWithoutRuntimeDoesNotPrefetch() throws Exception {
+      final MavenArtifact artifact = artifact("lib", "1.0");
+
+      resolver.resolve(artifact, (ProvisioningRuntime) null);
+
+      assertEquals("1.1", artifact.getVersion());
+      assertFalse(Files.exists(cache.resolve("org/test/other")));
+   }
+
+   private static MavenArtifact artifact(String artifactId, String version) {
+      return new MavenArtifact().setGroupId("org.test").setArtifactId(artifactId).setVersion(version).setExtension("jar");
+   }
+
+   private void publish(String artifactId, String... versions) throws IOException {
+      final Path artifactDir = repository.resolve("org/test").resolve(artifactId);
+      final StringBuilder metadata = new StringBuilder("<metadata><groupId>org.test</groupId><artifactId>")
+         .append(artifactId).append("</artifactId><versioning><versions>");
+      for (String version : versions) {
+         final Path versionDir = artifactDir.resolve(version);
+         Files.createDirectories(versionDir);
+         Files.write(versionDir.resolve(artifactId + "-" + version + ".jar"), version.getBytes(StandardCharsets.UTF_8));
+         metadata.append("<version>").append(version).append("</version>");
+      }
+      metadata.append("</versions></versioning></metadata>");
+      Files.write(artifactDir.resolve("maven-metadata.xml"), metadata.toString().getBytes(StandardCharsets.UTF_8));
+   }
+}